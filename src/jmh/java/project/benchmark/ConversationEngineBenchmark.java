@@ -0,0 +1,131 @@
+package project.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import project.model.Reminders;
+import project.model.User;
+import project.service.ConversationEngine;
+import project.service.ConversationState;
+import project.service.MessageTemplates;
+import project.service.UserSessionService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/*
+Стоимость выбора и выполнения перехода ConversationEngine на одно сообщение, без базы и Telegram:
+переходы - пустые лямбды с той же таблицей, что у ReminderService, сессии - настоящий UserSessionService.
+extraFlows добавляет в таблицу команд лишние сценарии: время на сообщение от их числа расти не должно.
+Запуск: mvn -Pjmh compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversationEngineBenchmark {
+    private static final String TITLE = "Позвонить маме";
+    private static final String TEXT = "Про выходные";
+    private static final String DATE = "завтра в 14:30";
+
+    @Param({"0", "100"})
+    public int extraFlows;
+
+    @Param({"10000"})
+    public int users;
+
+    private ConversationEngine engine;
+    private User[] userPool;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) throws IOException {
+        Path workDir = Files.createTempDirectory("conversation-bench");
+        System.setProperty("config.file", writeConfig(workDir).toString());
+
+        engine = new ConversationEngine(UserSessionService.getInstance())
+                .onCommand(MessageTemplates.CREATE_REMINDER, (user, input, session) -> {
+                    session.setReminder(new Reminders());
+                    return ConversationState.AWAITING_TITLE;
+                })
+                .onCommand(MessageTemplates.MY_REMINDERS, (user, input, session) -> ConversationState.IDLE)
+                .onState(ConversationState.IDLE, (user, input, session) -> {
+                    blackhole.consume(input);
+                    return ConversationState.IDLE;
+                })
+                .onState(ConversationState.AWAITING_TITLE, (user, input, session) -> {
+                    session.getReminder().setTitle(input);
+                    return ConversationState.AWAITING_TEXT;
+                })
+                .onState(ConversationState.AWAITING_TEXT, (user, input, session) -> {
+                    session.getReminder().setText(input);
+                    return ConversationState.AWAITING_DATE;
+                })
+                .onState(ConversationState.AWAITING_DATE, (user, input, session) -> {
+                    blackhole.consume(session.getReminder());
+                    return ConversationState.IDLE;
+                });
+        for (int i = 0; i < extraFlows; i++) {
+            engine.onCommand("Сценарий " + i, (user, input, session) -> ConversationState.AWAITING_TITLE);
+        }
+
+        userPool = new User[users];
+        for (int i = 0; i < users; i++) {
+            userPool[i] = new User(i + 1, "user" + i, "User", ZoneId.of("Europe/Moscow"), "Москва", false, false, true);
+        }
+    }
+
+    // Обычное сообщение вне диалога: сессия не создаётся
+    @Benchmark
+    public void idleMessage() {
+        engine.dispatch(nextUser(), TITLE);
+    }
+
+    // Весь сценарий создания напоминания: кнопка, заголовок, текст, дата; время - на одно сообщение
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public void reminderFlow() {
+        User user = nextUser();
+        engine.dispatch(user, MessageTemplates.CREATE_REMINDER);
+        engine.dispatch(user, TITLE);
+        engine.dispatch(user, TEXT);
+        engine.dispatch(user, DATE);
+    }
+
+    private User nextUser() {
+        User user = userPool[next];
+        next = next + 1 == userPool.length ? 0 : next + 1;
+        return user;
+    }
+
+    private static Path writeConfig(Path workDir) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("telegram.bot.token", "benchmark");
+        properties.setProperty("session.snapshot.file", workDir.resolve("sessions.bin").toString());
+        properties.setProperty("log.file", workDir.resolve("bot.log").toString());
+
+        Path configFile = workDir.resolve("application.properties");
+        try (OutputStream out = Files.newOutputStream(configFile)) {
+            properties.store(out, "Generated by ConversationEngineBenchmark");
+        }
+        return configFile;
+    }
+}
@@ -0,0 +1,246 @@
+package project.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import project.database.DatabaseManager;
+import project.logic.BotLogic;
+import project.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Нагрузочный тест без сети: бот работает с RecordingTelegramClient и MongoDB в памяти
+(mongo-java-server), N пользователей одновременно проходят сценарий
+регистрация -> город -> создание напоминания -> список.
+Задержка шага - от передачи обновления в BotLogic.consume до последнего ответа бота.
+
+Запуск: mvn -Ploadtest compile exec:java -Dexec.args="[пользователей] [прогрев] [задержка Telegram, мс]"
+ */
+public class LoadTest {
+    private static final long REPLY_TIMEOUT_SECONDS = 30;
+    private static final long USER_ID_BASE = 1_000_000_000L;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // Текст сообщения, число ответов бота и фрагмент первого ответа, по которому проверяется шаг
+    private static final Step[] SCENARIO = {
+            new Step("register", "/start", 1, "Добро пожаловать"),
+            new Step("city", "Москва", 1, "Отлично!"),
+            new Step("create", "Создать напоминание", 1, "Введите заголовок"),
+            new Step("title", "Нагрузочный тест", 1, "Введите текст"),
+            new Step("text", "Проверить отчёт", 1, "Введите дату"),
+            new Step("date", "завтра в 10:00", 1, "Напоминание успешно создано"),
+            new Step("list", "Мои напоминания", 2, "Нагрузочный тест"),
+    };
+
+    private final Map<Long, BlockingQueue<String>> replies = new ConcurrentHashMap<>();
+    private final AtomicInteger updateIds = new AtomicInteger();
+    private final AtomicInteger messageIds = new AtomicInteger();
+    private BotLogic bot;
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int warmupUsers = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long telegramLatencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        new LoadTest().run(users, warmupUsers, telegramLatencyMillis);
+        // Фоновые потоки бота и драйвера MongoDB не должны задерживать выход
+        System.exit(0);
+    }
+
+    private void run(int users, int warmupUsers, long telegramLatencyMillis) throws Exception {
+        MongoServer mongoServer = new MongoServer(new MemoryBackend());
+        InetSocketAddress address = mongoServer.bind();
+        Path workDir = Files.createTempDirectory("bot-loadtest");
+        System.setProperty("config.file", writeConfig(workDir, address).toString());
+
+        RecordingTelegramClient telegramClient = new RecordingTelegramClient(telegramLatencyMillis,
+                (text, chatId) -> {
+                    BlockingQueue<String> queue = replies.get(chatId);
+                    if (queue != null) {
+                        queue.add(text);
+                    }
+                });
+        DatabaseManager databaseManager = DatabaseManager.getInstance();
+        databaseManager.ensureIndexes();
+        bot = new BotLogic(telegramClient, databaseManager);
+        bot.start().join();
+        try {
+            if (warmupUsers > 0) {
+                System.out.println("Warmup: " + warmupUsers + " users");
+                runUsers(USER_ID_BASE, warmupUsers);
+            }
+            System.out.println("Load test: " + users + " users, " + SCENARIO.length + " steps each"
+                    + ", Telegram latency " + telegramLatencyMillis + " ms");
+            Result result = runUsers(USER_ID_BASE + warmupUsers, users);
+            result.print();
+            System.out.println("Telegram calls: " + telegramClient.getCalls());
+        } finally {
+            bot.close();
+            mongoServer.shutdownNow();
+        }
+    }
+
+    private Result runUsers(long firstUserId, int users) throws InterruptedException {
+        Result result = new Result();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < users; i++) {
+                long userId = firstUserId + i;
+                executor.execute(() -> runScenario(userId, result));
+            }
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private void runScenario(long userId, Result result) {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        replies.put(userId, queue);
+        long scenarioStart = System.nanoTime();
+        try {
+            for (int i = 0; i < SCENARIO.length; i++) {
+                Step step = SCENARIO[i];
+                long stepStart = System.nanoTime();
+                bot.consume(buildUpdate(userId, step.text));
+
+                String first = null;
+                for (int reply = 0; reply < step.replies; reply++) {
+                    String text = queue.poll(REPLY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    if (text == null) {
+                        result.fail("timeout at " + step.name);
+                        return;
+                    }
+                    if (first == null) {
+                        first = text;
+                    }
+                }
+                result.steps[i].recordSince(stepStart);
+                result.updates.incrementAndGet();
+                if (first == null || !first.contains(step.expected)) {
+                    result.fail("unexpected reply at " + step.name + ": " + first);
+                    return;
+                }
+            }
+            result.scenarios.recordSince(scenarioStart);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            replies.remove(userId);
+        }
+    }
+
+    // Обновление собирается из JSON, как его присылает Telegram
+    private Update buildUpdate(long userId, String text) {
+        ObjectNode user = OBJECT_MAPPER.createObjectNode()
+                .put("id", userId)
+                .put("is_bot", false)
+                .put("first_name", "User" + userId)
+                .put("username", "loadtest_" + userId);
+        ObjectNode chat = OBJECT_MAPPER.createObjectNode()
+                .put("id", userId)
+                .put("type", "private");
+        ObjectNode message = OBJECT_MAPPER.createObjectNode()
+                .put("message_id", messageIds.incrementAndGet())
+                .put("date", TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()))
+                .put("text", text);
+        message.set("from", user);
+        message.set("chat", chat);
+        ObjectNode update = OBJECT_MAPPER.createObjectNode().put("update_id", updateIds.incrementAndGet());
+        update.set("message", message);
+        try {
+            return OBJECT_MAPPER.treeToValue(update, Update.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot build update", e);
+        }
+    }
+
+    private static Path writeConfig(Path workDir, InetSocketAddress mongoAddress) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("telegram.bot.token", "loadtest");
+        properties.setProperty("mongodb.connection.string",
+                "mongodb://" + mongoAddress.getHostString() + ":" + mongoAddress.getPort());
+        properties.setProperty("mongodb.database.name", "loadtest");
+        properties.setProperty("mongodb.server-api", "false");
+        // mongo-java-server не поддерживает потоки изменений
+        properties.setProperty("mongodb.change-streams.enabled", "false");
+        // -Dstorage.engine=embedded сравнивает встроенный журнал с MongoDB
+        properties.setProperty("storage.engine", System.getProperty("storage.engine", "mongo"));
+        properties.setProperty("storage.embedded.dir", workDir.resolve("data").toString());
+        // Ограничения Telegram на скорость отправки здесь не проверяются
+        properties.setProperty("telegram.send.global-rate", "1000000");
+        properties.setProperty("telegram.send.chat-rate", "1000000");
+        properties.setProperty("session.snapshot.file", workDir.resolve("sessions.bin").toString());
+        properties.setProperty("log.file", workDir.resolve("bot.log").toString());
+        properties.setProperty("metrics.port", "0");
+
+        Path configFile = workDir.resolve("application.properties");
+        try (OutputStream out = Files.newOutputStream(configFile)) {
+            properties.store(out, "Generated by LoadTest");
+        }
+        return configFile;
+    }
+
+    private record Step(String name, String text, int replies, String expected) {
+    }
+
+    private static final class Result {
+        private final LatencyHistogram[] steps = new LatencyHistogram[SCENARIO.length];
+        private final LatencyHistogram scenarios = new LatencyHistogram();
+        private final AtomicLong updates = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final List<String> failureSamples = new ArrayList<>();
+        private long elapsedNanos;
+
+        private Result() {
+            for (int i = 0; i < steps.length; i++) {
+                steps[i] = new LatencyHistogram();
+            }
+        }
+
+        private void fail(String reason) {
+            failures.incrementAndGet();
+            synchronized (failureSamples) {
+                if (failureSamples.size() < 10) {
+                    failureSamples.add(reason);
+                }
+            }
+        }
+
+        private void print() {
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf("Elapsed: %.2f s, updates: %d (%.0f/s), completed scenarios: %d, failures: %d%n",
+                    seconds, updates.get(), updates.get() / seconds, scenarios.getCount(), failures.get());
+            System.out.printf("%-10s %8s %10s %10s %10s%n", "step", "count", "p50 ms", "p99 ms", "p999 ms");
+            for (int i = 0; i < steps.length; i++) {
+                printRow(SCENARIO[i].name, steps[i]);
+            }
+            printRow("scenario", scenarios);
+            failureSamples.forEach(reason -> System.out.println("  failure: " + reason));
+        }
+
+        private static void printRow(String name, LatencyHistogram histogram) {
+            System.out.printf("%-10s %8d %10.2f %10.2f %10.2f%n", name, histogram.getCount(),
+                    histogram.quantileMicros(0.5) / 1000.0,
+                    histogram.quantileMicros(0.99) / 1000.0,
+                    histogram.quantileMicros(0.999) / 1000.0);
+        }
+    }
+}
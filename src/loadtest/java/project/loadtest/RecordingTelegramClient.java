@@ -0,0 +1,69 @@
+package project.loadtest;
+
+import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
+import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+
+/*
+Клиент Telegram для нагрузочного теста: запросы никуда не уходят, а считаются по методам.
+Ответ собирается из JSON тем же разбором, что и у настоящего клиента, с необязательной
+искусственной задержкой сети. О каждом отправленном в чат сообщении сообщается слушателю.
+ */
+public class RecordingTelegramClient extends OkHttpTelegramClient {
+    private final long latencyMillis;
+    private final ObjLongConsumer<String> onChatMessage;
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final AtomicInteger messageIds = new AtomicInteger();
+
+    public RecordingTelegramClient(long latencyMillis, ObjLongConsumer<String> onChatMessage) {
+        super("loadtest");
+        this.latencyMillis = latencyMillis;
+        this.onChatMessage = onChatMessage;
+    }
+
+    @Override
+    public <T extends Serializable, Method extends BotApiMethod<T>> T execute(Method method) throws TelegramApiException {
+        calls.computeIfAbsent(method.getMethod(), key -> new LongAdder()).increment();
+        if (latencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TelegramApiException("Interrupted", e);
+            }
+        }
+
+        String chatId = null;
+        String text = null;
+        if (method instanceof SendMessage sendMessage) {
+            chatId = sendMessage.getChatId();
+            text = sendMessage.getText();
+        } else if (method instanceof EditMessageText editMessage) {
+            chatId = editMessage.getChatId();
+            text = editMessage.getText();
+        }
+        if (chatId == null) {
+            return method.deserializeResponse("{\"ok\":true,\"result\":true}");
+        }
+
+        T result = method.deserializeResponse("{\"ok\":true,\"result\":{\"message_id\":" + messageIds.incrementAndGet()
+                + ",\"date\":" + TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis())
+                + ",\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"}}}");
+        onChatMessage.accept(text, Long.parseLong(chatId));
+        return result;
+    }
+
+    public Map<String, LongAdder> getCalls() {
+        return calls;
+    }
+}
@@ -0,0 +1,205 @@
+package project.loadtest;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import project.database.DatabaseManager;
+import project.service.DeliveryPlanner;
+import project.service.MessageHandler;
+import project.service.MessageSendPipeline;
+import project.service.ReminderDispatcher;
+import project.service.ShardLeaseManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/*
+Несколько экземпляров диспетчера напоминаний в одном процессе против одной базы
+(mongo-java-server в памяти). Напоминания созданы на ближайшие секунды; после доставки трети
+один экземпляр останавливается, после двух третей подключается новый. Вторая половина
+напоминаний создаётся уже во время прогона, не глядя на владельца шарда, как это делают
+экземпляры, принимающие сообщения. В конце проверяется, что каждое напоминание доставлено ровно один раз.
+
+Запуск: mvn -Ploadtest compile exec:java -Dloadtest.main=project.loadtest.ShardSimulation
+        -Dexec.args="[экземпляров] [напоминаний] [секунд до последнего срока]"
+ */
+public class ShardSimulation {
+    private static final int SHARDS = 16;
+    private static final long LEASE_TTL_MILLIS = 3000;
+    private static final long LEASE_RENEW_MILLIS = 1000;
+    private static final long POLL_INTERVAL_MILLIS = 500;
+    private static final long DRAIN_TIMEOUT_SECONDS = 30;
+    private static final String TITLE_PREFIX = "sim-";
+
+    private final Map<Integer, LongAdder> deliveries = new ConcurrentHashMap<>();
+    private final AtomicInteger delivered = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int reminders = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int spreadSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+        boolean ok = new ShardSimulation().run(instances, reminders, spreadSeconds);
+        System.exit(ok ? 0 : 1);
+    }
+
+    private boolean run(int instances, int reminders, int spreadSeconds) throws Exception {
+        MongoServer mongoServer = new MongoServer(new MemoryBackend());
+        InetSocketAddress address = mongoServer.bind();
+        Path workDir = Files.createTempDirectory("bot-shards");
+        System.setProperty("config.file", writeConfig(workDir, address).toString());
+
+        DatabaseManager databaseManager = DatabaseManager.getInstance();
+        databaseManager.ensureIndexes();
+        int preloaded = reminders / 2;
+        createReminders(databaseManager, 0, preloaded, spreadSeconds);
+        System.out.println("Created " + preloaded + " reminders due within " + (spreadSeconds + 2) + " s, "
+                + SHARDS + " shards, " + instances + " instances");
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            nodes.add(new Node("node-" + i, databaseManager));
+        }
+        nodes.forEach(Node::start);
+        nodes.forEach(node -> node.started.join());
+        printOwnership("started", nodes);
+        createReminders(databaseManager, preloaded, reminders, spreadSeconds);
+        System.out.println("Created " + (reminders - preloaded) + " more reminders while running");
+
+        awaitDelivered(reminders / 3);
+        Node leaving = nodes.remove(0);
+        leaving.close();
+        TimeUnit.MILLISECONDS.sleep(2 * LEASE_RENEW_MILLIS);
+        printOwnership(leaving.name + " left", nodes);
+
+        awaitDelivered(2 * reminders / 3);
+        Node joining = new Node("node-" + instances, databaseManager);
+        nodes.add(joining);
+        joining.start();
+        joining.started.join();
+        TimeUnit.MILLISECONDS.sleep(2 * LEASE_RENEW_MILLIS);
+        printOwnership(joining.name + " joined", nodes);
+
+        awaitDelivered(reminders);
+        // Даём возможным дублям время проявиться
+        TimeUnit.MILLISECONDS.sleep(2 * POLL_INTERVAL_MILLIS);
+
+        List<Node> all = new ArrayList<>(nodes);
+        all.add(leaving);
+        for (Node node : all) {
+            System.out.printf("%-8s delivered %d%n", node.name, node.delivered.sum());
+        }
+        long duplicates = deliveries.values().stream().filter(count -> count.sum() > 1).count();
+        long missing = reminders - deliveries.size();
+        Set<Integer> allShards = IntStream.range(0, SHARDS).boxed().collect(Collectors.toSet());
+        int stillActive = databaseManager.getUpcomingReminders(Instant.now().plusSeconds(3600), allShards).size();
+        System.out.println("Delivered: " + deliveries.size() + "/" + reminders
+                + ", duplicates: " + duplicates + ", missing: " + missing + ", still active: " + stillActive);
+
+        nodes.forEach(Node::close);
+        databaseManager.closeConnection();
+        mongoServer.shutdownNow();
+        return duplicates == 0 && missing == 0 && stillActive == 0;
+    }
+
+    // Сроки отсчитываются от момента создания, владельца шарда создатель не проверяет
+    private static void createReminders(DatabaseManager databaseManager, int from, int to, int spreadSeconds) {
+        Instant now = Instant.now();
+        List<CompletableFuture<?>> inserts = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            String userId = String.valueOf(2_000_000_000L + i % 500);
+            Instant remindAt = now.plusMillis(2000 + (long) (i - from) * spreadSeconds * 1000 / (to - from));
+            inserts.add(databaseManager.addReminderAsync(userId, TITLE_PREFIX + i, null, now, remindAt));
+        }
+        CompletableFuture.allOf(inserts.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void awaitDelivered(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+        while (delivered.get() < count && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+    }
+
+    private static void printOwnership(String event, List<Node> nodes) {
+        StringBuilder line = new StringBuilder("Shards after ").append(event).append(':');
+        for (Node node : nodes) {
+            line.append(' ').append(node.name).append('=').append(node.leases.getOwnedShards());
+        }
+        System.out.println(line);
+    }
+
+    private void recordDelivery(Node node, String text) {
+        int start = text.indexOf(TITLE_PREFIX);
+        if (start < 0) {
+            return;
+        }
+        int id = Integer.parseInt(text.substring(start + TITLE_PREFIX.length()).trim());
+        deliveries.computeIfAbsent(id, key -> new LongAdder()).increment();
+        node.delivered.increment();
+        delivered.incrementAndGet();
+    }
+
+    private static Path writeConfig(Path workDir, InetSocketAddress mongoAddress) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("telegram.bot.token", "loadtest");
+        properties.setProperty("mongodb.connection.string",
+                "mongodb://" + mongoAddress.getHostString() + ":" + mongoAddress.getPort());
+        properties.setProperty("mongodb.database.name", "shards");
+        properties.setProperty("mongodb.server-api", "false");
+        properties.setProperty("storage.engine", System.getProperty("storage.engine", "mongo"));
+        properties.setProperty("storage.embedded.dir", workDir.resolve("data").toString());
+        properties.setProperty("reminders.shards", String.valueOf(SHARDS));
+        properties.setProperty("log.file", workDir.resolve("bot.log").toString());
+        properties.setProperty("metrics.port", "0");
+
+        Path configFile = workDir.resolve("application.properties");
+        try (OutputStream out = Files.newOutputStream(configFile)) {
+            properties.store(out, "Generated by ShardSimulation");
+        }
+        return configFile;
+    }
+
+    // Экземпляр бота без приёма обновлений: свой клиент Telegram, конвейер отправки, аренды и диспетчер
+    private final class Node {
+        private final String name;
+        private final LongAdder delivered = new LongAdder();
+        private final MessageSendPipeline sendPipeline;
+        private final ShardLeaseManager leases;
+        private final ReminderDispatcher dispatcher;
+        private CompletableFuture<Void> started;
+
+        private Node(String name, DatabaseManager databaseManager) {
+            this.name = name;
+            RecordingTelegramClient telegramClient = new RecordingTelegramClient(0,
+                    (text, chatId) -> recordDelivery(this, text));
+            this.sendPipeline = new MessageSendPipeline(telegramClient, 1_000_000, 1_000_000, 2, 100_000);
+            this.leases = new ShardLeaseManager(databaseManager, name, LEASE_TTL_MILLIS, LEASE_RENEW_MILLIS);
+            this.dispatcher = new ReminderDispatcher(databaseManager, new MessageHandler(sendPipeline),
+                    leases, new DeliveryPlanner(1_000_000, 0), POLL_INTERVAL_MILLIS);
+        }
+
+        private void start() {
+            started = dispatcher.start();
+        }
+
+        private void close() {
+            dispatcher.close();
+            sendPipeline.close();
+        }
+    }
+}
@@ -2,24 +2,38 @@ package project.config;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Properties;
 
 public class ConfigLoader {
     private static final Properties properties = new Properties();
-    private static ConfigLoader instance;
 
     private ConfigLoader() {
         loadProperties();
     }
 
+    private static final class Holder {
+        private static final ConfigLoader INSTANCE = new ConfigLoader();
+    }
+
     public static ConfigLoader getInstance() {
-        if (instance == null) {
-            instance = new ConfigLoader();
-        }
-        return instance;
+        return Holder.INSTANCE;
     }
 
     private void loadProperties() {
+        // -Dconfig.file подменяет настройки из classpath, например для нагрузочного теста
+        String configFile = System.getProperty("config.file");
+        if (configFile != null) {
+            try (InputStream input = Files.newInputStream(Path.of(configFile))) {
+                properties.load(input);
+                return;
+            } catch (IOException e) {
+                throw new RuntimeException("Error loading " + configFile, e);
+            }
+        }
         try (InputStream input = getClass().getClassLoader().getResourceAsStream("application.properties")) {
             if (input == null) {
                 throw new RuntimeException("Unable to find application.properties");
@@ -41,4 +55,217 @@ public class ConfigLoader {
     public String getMongoDbDatabaseName() {
         return properties.getProperty("mongodb.database.name");
     }
+
+    // Настройки пула соединений, одинаковые для синхронного и реактивного клиентов
+    public int getMongoDbPoolMaxSize() {
+        return getIntProperty("mongodb.pool.max-size", 100);
+    }
+
+    public int getMongoDbPoolMinSize() {
+        return getIntProperty("mongodb.pool.min-size", 10);
+    }
+
+    public int getMongoDbPoolMaxConnecting() {
+        return getIntProperty("mongodb.pool.max-connecting", 4);
+    }
+
+    public int getMongoDbPoolMaxWaitMillis() {
+        return getIntProperty("mongodb.pool.max-wait-ms", 5000);
+    }
+
+    // Stable API V1 по умолчанию; false - для серверов без команды hello (например, mongo-java-server)
+    public boolean isMongoDbServerApiEnabled() {
+        return !"false".equalsIgnoreCase(properties.getProperty("mongodb.server-api", "true").trim());
+    }
+
+    // Потоки изменений работают только на наборе реплик; на одиночном сервере отключаются сами с предупреждением
+    public boolean isMongoDbChangeStreamsEnabled() {
+        return !"false".equalsIgnoreCase(properties.getProperty("mongodb.change-streams.enabled", "true").trim());
+    }
+
+    // Файл с токенами продолжения, свой у каждого экземпляра
+    public String getMongoDbChangeStreamTokenFile() {
+        return properties.getProperty("mongodb.change-streams.token-file", "data/change-streams.properties").trim();
+    }
+
+    public double getTelegramGlobalSendRate() {
+        return getDoubleProperty("telegram.send.global-rate", 30);
+    }
+
+    public double getTelegramChatSendRate() {
+        return getDoubleProperty("telegram.send.chat-rate", 1);
+    }
+
+    public int getTelegramSendThreads() {
+        return getIntProperty("telegram.send.threads", 4);
+    }
+
+    public int getTelegramSendQueueCapacity() {
+        return getIntProperty("telegram.send.queue-capacity", 10_000);
+    }
+
+    public int getUserCacheMaxSize() {
+        return getIntProperty("user.cache.max-size", 100_000);
+    }
+
+    public int getUserCacheTtlMinutes() {
+        return getIntProperty("user.cache.ttl-minutes", 30);
+    }
+
+    public int getReminderBatchMaxSize() {
+        return getIntProperty("reminders.batch.max-size", 500);
+    }
+
+    public int getReminderBatchMaxDelayMillis() {
+        return getIntProperty("reminders.batch.max-delay-ms", 5);
+    }
+
+    // Число шардов напоминаний; должно совпадать на всех экземплярах бота
+    public int getReminderShardCount() {
+        return getIntProperty("reminders.shards", 16);
+    }
+
+    public int getReminderLeaseTtlMillis() {
+        return getIntProperty("reminders.lease.ttl-ms", 30_000);
+    }
+
+    public int getReminderLeaseRenewMillis() {
+        return getIntProperty("reminders.lease.renew-ms", 10_000);
+    }
+
+    // Как часто владелец шардов подбирает напоминания, созданные на других экземплярах
+    public int getReminderPollIntervalMillis() {
+        return getIntProperty("reminders.poll-interval-ms", 5000);
+    }
+
+    // Насколько раньше срока можно отправить напоминание со временем по умолчанию, если на эту минуту приходится всплеск
+    public int getReminderEarlyReleaseMillis() {
+        return getIntProperty("reminders.early-release-ms", 60_000);
+    }
+
+    // Имя экземпляра в арендах; по умолчанию имя хоста и pid
+    public String getInstanceId() {
+        String instanceId = properties.getProperty("instance.id");
+        if (instanceId != null && !instanceId.isBlank()) {
+            return instanceId.trim();
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "localhost";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    // mongo или embedded (журнал в отображаемых в память файлах на локальном диске)
+    public String getStorageEngine() {
+        return properties.getProperty("storage.engine", "mongo").trim();
+    }
+
+    public String getEmbeddedStorageDir() {
+        return properties.getProperty("storage.embedded.dir", "data");
+    }
+
+    // 0 - сброс на диск после каждой записи
+    public int getEmbeddedSyncIntervalMillis() {
+        return getIntProperty("storage.embedded.sync-interval-ms", 200);
+    }
+
+    public int getReminderPageSize() {
+        return getIntProperty("reminders.page-size", 10);
+    }
+
+    public int getSessionTtlMinutes() {
+        return getIntProperty("session.ttl-minutes", 60);
+    }
+
+    public String getSessionSnapshotFile() {
+        return properties.getProperty("session.snapshot.file", "sessions.bin");
+    }
+
+    // Путь к полной выгрузке GeoNames; если не задан, используется встроенный cities.tsv
+    public String getCitiesFile() {
+        return properties.getProperty("timezone.cities.file");
+    }
+
+    // Сколько обновлений одновременно обрабатывается или ждёт в очередях чатов; сверх этого - отказ
+    public int getMaxInFlightUpdates() {
+        return getIntProperty("updates.max-in-flight", 1000);
+    }
+
+    // Не больше updates.user.limit обновлений от одного пользователя за скользящее окно
+    public int getUserUpdateLimit() {
+        return getIntProperty("updates.user.limit", 20);
+    }
+
+    public int getUserUpdateWindowMillis() {
+        return getIntProperty("updates.user.window-ms", 10_000);
+    }
+
+    public String getLogFile() {
+        return properties.getProperty("log.file", "logs/bot.log");
+    }
+
+    public int getLogMaxFileSizeMb() {
+        return getIntProperty("log.max-file-size-mb", 10);
+    }
+
+    public int getLogMaxFiles() {
+        return getIntProperty("log.max-files", 5);
+    }
+
+    public int getLogBufferSize() {
+        return getIntProperty("log.buffer-size", 8192);
+    }
+
+    // Из скольких DEBUG-событий записывается одно
+    public int getLogDebugSampleRate() {
+        return getIntProperty("log.debug.sample-rate", 100);
+    }
+
+    public String getMetricsHost() {
+        return properties.getProperty("metrics.host", "127.0.0.1");
+    }
+
+    // 0 отключает HTTP-эндпоинт метрик
+    public int getMetricsPort() {
+        return getIntProperty("metrics.port", 9464);
+    }
+
+    // polling (по умолчанию) или webhook
+    public String getTelegramMode() {
+        return properties.getProperty("telegram.mode", "polling");
+    }
+
+    public String getWebhookHost() {
+        return properties.getProperty("telegram.webhook.host", "0.0.0.0");
+    }
+
+    public int getWebhookPort() {
+        return getIntProperty("telegram.webhook.port", 8443);
+    }
+
+    public String getWebhookPath() {
+        return properties.getProperty("telegram.webhook.path", "/telegram/webhook");
+    }
+
+    public String getWebhookSecret() {
+        return properties.getProperty("telegram.webhook.secret");
+    }
+
+    // Публичный адрес для setWebhook; если не задан, бот только слушает порт (локальная отладка)
+    public String getWebhookUrl() {
+        return properties.getProperty("telegram.webhook.url");
+    }
+
+    private int getIntProperty(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private double getDoubleProperty(String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : Double.parseDouble(value.trim());
+    }
 }
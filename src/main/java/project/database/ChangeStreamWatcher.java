@@ -0,0 +1,294 @@
+package project.database;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.json.JsonParseException;
+import org.bson.types.ObjectId;
+import project.metrics.Counter;
+import project.metrics.MetricsRegistry;
+import project.model.ScheduledReminder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+Следит за коллекциями users и reminders через потоки изменений MongoDB (нужен набор реплик),
+чтобы данные в памяти этого экземпляра не устаревали после записи с другого экземпляра или ручной правки в базе.
+По users сбрасывается запись кэша пользователей и обновляется множество заблокированных,
+изменения reminders получает диспетчер напоминаний.
+
+Токены продолжения раз в секунду сохраняются в файл: после обрыва или перезапуска чтение продолжается
+с того же места. Если токена нет или история в oplog уже потеряна, после открытия потока кэш пользователей
+сбрасывается и заблокированные перечитываются, чтобы не потерять изменения, сделанные до открытия.
+ */
+public class ChangeStreamWatcher {
+    private static final long SAVE_INTERVAL_MILLIS = 1000;
+    private static final long MAX_AWAIT_MILLIS = 1000;
+    private static final long MIN_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    // $changeStream на одиночном сервере без набора реплик
+    private static final int NOT_A_REPLICA_SET = 40573;
+    // InvalidResumeToken, ChangeStreamFatalError, ChangeStreamHistoryLost: продолжить с токена нельзя
+    private static final Set<Integer> RESUME_FAILED = Set.of(260, 280, 286);
+
+    public interface ReminderListener {
+        // Активное напоминание создано или изменено
+        void onReminderActive(ScheduledReminder reminder);
+
+        // Напоминание удалено или больше не активно
+        void onReminderInactive(ObjectId reminderId);
+    }
+
+    private final DatabaseManager databaseManager;
+    private final ReminderListener reminderListener;
+    private final Path tokenFile;
+    private final Stream users;
+    private final Stream reminders;
+    private volatile boolean running = true;
+    private long savedAtMillis;
+
+    ChangeStreamWatcher(DatabaseManager databaseManager, MongoCollection<Document> usersCollection,
+                        MongoCollection<Document> remindersCollection, Path tokenFile, ReminderListener reminderListener) {
+        this.databaseManager = databaseManager;
+        this.reminderListener = reminderListener;
+        this.tokenFile = tokenFile;
+        // Значение isBanned видно и без чтения документа: в описании обновления или в самом документе
+        this.users = new Stream("users", usersCollection, FullDocument.DEFAULT,
+                List.of(Aggregates.match(Filters.in("operationType", "insert", "update", "replace", "delete"))),
+                this::onUserChange, databaseManager::resyncUsers);
+        // Захват и отметку об отправке делает владелец шарда, остальным экземплярам эти события не нужны
+        this.reminders = new Stream("reminders", remindersCollection, FullDocument.UPDATE_LOOKUP,
+                List.of(Aggregates.match(Filters.or(
+                        Filters.in("operationType", "insert", "replace", "delete"),
+                        Filters.and(Filters.eq("operationType", "update"),
+                                Filters.nin("updateDescription.updatedFields.status", "sending", "sent"))))),
+                this::onReminderChange, () -> {
+                });
+        loadTokens();
+    }
+
+    public void start() {
+        users.thread.start();
+        reminders.thread.start();
+    }
+
+    public void close() {
+        running = false;
+        try {
+            users.thread.join(2 * MAX_AWAIT_MILLIS);
+            reminders.thread.join(2 * MAX_AWAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saveTokens();
+    }
+
+    private void watch(Stream stream) {
+        long backoffMillis = MIN_BACKOFF_MILLIS;
+        while (running) {
+            BsonDocument resumeToken = stream.token;
+            ChangeStreamIterable<Document> changes = stream.collection.watch(stream.pipeline)
+                    .fullDocument(stream.fullDocument)
+                    .maxAwaitTime(MAX_AWAIT_MILLIS, TimeUnit.MILLISECONDS);
+            if (resumeToken != null) {
+                changes.resumeAfter(resumeToken);
+            }
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changes.cursor()) {
+                if (resumeToken == null) {
+                    // Поток уже открыт: всё, что изменится дальше, придёт в нём
+                    stream.onFreshStart.run();
+                }
+                System.out.println("🔔 Watching " + stream.name + " changes" + (resumeToken != null ? " from the saved token" : ""));
+                backoffMillis = MIN_BACKOFF_MILLIS;
+                while (running) {
+                    ChangeStreamDocument<Document> change = cursor.tryNext();
+                    if (change != null && change.getOperationType() == OperationType.INVALIDATE) {
+                        // Коллекцию удалили или переименовали: после invalidate продолжить нельзя, открываем заново
+                        stream.token = null;
+                        break;
+                    }
+                    if (change != null) {
+                        apply(stream, change);
+                    }
+                    // Токен двигается и без событий, поэтому после простоя не приходится перечитывать oplog
+                    BsonDocument token = cursor.getResumeToken();
+                    if (token != null) {
+                        stream.token = token;
+                    }
+                    saveTokensIfDue();
+                }
+            } catch (MongoException e) {
+                if (!running) {
+                    return;
+                }
+                if (e.getCode() == NOT_A_REPLICA_SET) {
+                    System.err.println("⚠️ Change streams need a replica set, " + stream.name
+                            + " changes from other instances are picked up by polling and cache expiry only");
+                    return;
+                }
+                if (RESUME_FAILED.contains(e.getCode())) {
+                    System.err.println("⚠️ Cannot resume " + stream.name + " changes (" + e.getMessage() + "), starting from now");
+                    stream.token = null;
+                    continue;
+                }
+                System.err.println("Error watching " + stream.name + " changes: " + e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoffMillis = Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+            }
+        }
+    }
+
+    private void apply(Stream stream, ChangeStreamDocument<Document> change) {
+        try {
+            stream.handler.accept(change);
+            stream.events.increment();
+        } catch (RuntimeException e) {
+            System.err.println("Error applying " + stream.name + " change: " + e.getMessage());
+        }
+    }
+
+    private void onUserChange(ChangeStreamDocument<Document> change) {
+        BsonDocument key = change.getDocumentKey();
+        if (key != null && key.isNumber("_id")) {
+            databaseManager.onUserChanged(key.getNumber("_id").longValue(), bannedAfter(change));
+        }
+    }
+
+    // Новое значение isBanned или null, если изменение его не затронуло
+    private static Boolean bannedAfter(ChangeStreamDocument<Document> change) {
+        if (change.getOperationType() == OperationType.DELETE) {
+            return false;
+        }
+        Document user = change.getFullDocument();
+        if (user != null) {
+            return user.getBoolean("isBanned", false);
+        }
+        UpdateDescription update = change.getUpdateDescription();
+        if (update == null) {
+            return null;
+        }
+        BsonValue banned = update.getUpdatedFields() != null ? update.getUpdatedFields().get("isBanned") : null;
+        if (banned != null) {
+            return banned.isBoolean() && banned.asBoolean().getValue();
+        }
+        return update.getRemovedFields() != null && update.getRemovedFields().contains("isBanned") ? false : null;
+    }
+
+    private void onReminderChange(ChangeStreamDocument<Document> change) {
+        BsonDocument key = change.getDocumentKey();
+        if (key == null || !key.isObjectId("_id")) {
+            return;
+        }
+        // Документ прочитан при обработке события, поэтому отражает последнее состояние, а не момент изменения
+        Document reminder = change.getFullDocument();
+        if (reminder != null && "active".equals(reminder.getString("status"))) {
+            reminderListener.onReminderActive(DocumentMapper.toScheduledReminder(reminder));
+        } else {
+            reminderListener.onReminderInactive(key.getObjectId("_id").getValue());
+        }
+    }
+
+    private void loadTokens() {
+        if (!Files.exists(tokenFile)) {
+            return;
+        }
+        Properties saved = new Properties();
+        try (Reader reader = Files.newBufferedReader(tokenFile)) {
+            saved.load(reader);
+            users.token = parseToken(saved.getProperty(users.name));
+            reminders.token = parseToken(saved.getProperty(reminders.name));
+        } catch (IOException | IllegalArgumentException | JsonParseException e) {
+            System.err.println("Ignoring change stream tokens in " + tokenFile + ": " + e.getMessage());
+        }
+    }
+
+    private static BsonDocument parseToken(String json) {
+        return json == null || json.isBlank() ? null : BsonDocument.parse(json);
+    }
+
+    private synchronized void saveTokensIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - savedAtMillis >= SAVE_INTERVAL_MILLIS) {
+            savedAtMillis = now;
+            saveTokens();
+        }
+    }
+
+    // Пишем во временный файл и атомарно подменяем, как снимок сессий
+    private synchronized void saveTokens() {
+        Properties tokens = new Properties();
+        for (Stream stream : List.of(users, reminders)) {
+            BsonDocument token = stream.token;
+            if (token != null) {
+                tokens.setProperty(stream.name, token.toJson());
+            }
+        }
+        if (tokens.isEmpty()) {
+            return;
+        }
+        Path tempFile = tokenFile.resolveSibling(tokenFile.getFileName() + ".tmp");
+        try {
+            Path parent = tokenFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (Writer writer = Files.newBufferedWriter(tempFile)) {
+                tokens.store(writer, "MongoDB change stream resume tokens");
+            }
+            Files.move(tempFile, tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error saving change stream tokens: " + e.getMessage());
+        }
+    }
+
+    private final class Stream {
+        private final String name;
+        private final MongoCollection<Document> collection;
+        private final FullDocument fullDocument;
+        private final List<Bson> pipeline;
+        private final Consumer<ChangeStreamDocument<Document>> handler;
+        private final Runnable onFreshStart;
+        private final Counter events;
+        private final Thread thread;
+        private volatile BsonDocument token;
+
+        private Stream(String name, MongoCollection<Document> collection, FullDocument fullDocument, List<Bson> pipeline,
+                       Consumer<ChangeStreamDocument<Document>> handler, Runnable onFreshStart) {
+            this.name = name;
+            this.collection = collection;
+            this.fullDocument = fullDocument;
+            this.pipeline = pipeline;
+            this.handler = handler;
+            this.onFreshStart = onFreshStart;
+            this.events = MetricsRegistry.getInstance()
+                    .counter("bot_change_stream_events_total", "Applied MongoDB change stream events", "collection", name);
+            this.thread = new Thread(() -> watch(this), "change-stream-" + name);
+            this.thread.setDaemon(true);
+        }
+    }
+}
@@ -1,167 +1,484 @@
 package project.database;
 
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.Updates;
-import org.bson.Document;
-import org.telegram.telegrambots.meta.api.objects.Update;
+import org.bson.types.ObjectId;
+import project.config.ConfigLoader;
+import project.metrics.Counter;
+import project.metrics.LatencyHistogram;
+import project.metrics.MetricsRegistry;
+import project.model.ReminderPage;
+import project.model.ScheduledReminder;
 import project.model.User;
-import project.service.MessageHandler;
+import project.util.LongHashSet;
+import project.util.RecurrenceRule;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.ZoneId;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
 public class DatabaseManager {
-    private static DatabaseManager instance;
-    private final MongoCollection<Document> users;
-    private final MongoCollection<Document> reminders;
+    private final UserRepository users;
+    private final ReminderRepository reminders;
+    private final LeaseRepository leases;
+    private final UserCache userCache;
+    // Заблокированные пользователи; изменения публикуются новой копией под bannedLock
+    private final Object bannedLock = new Object();
+    private volatile LongHashSet bannedUsers = new LongHashSet(16);
+    private Map<Long, Boolean> bannedDuringLoad;
+    private final int reminderShardCount;
+    // Только для движка mongo
+    private final MongoClientConnection connection;
+    private final ReminderWriteBatcher reminderWriter;
+    private volatile ChangeStreamWatcher changeWatcher;
+
+    // Задержки операций с базой, по гистограмме на операцию
+    private final LatencyHistogram isUserExistTimer = dbTimer("isUserExist");
+    private final LatencyHistogram addUserTimer = dbTimer("addUser");
+    private final LatencyHistogram registerUserTimer = dbTimer("registerUserIfAbsent");
+    private final LatencyHistogram updateUserTimer = dbTimer("updateUser");
+    private final LatencyHistogram getUserTimer = dbTimer("getUser");
+    private final LatencyHistogram updateUserCityTimer = dbTimer("updateUserCity");
+    private final LatencyHistogram addReminderTimer = dbTimer("addReminder");
+    private final LatencyHistogram upcomingRemindersTimer = dbTimer("getUpcomingReminders");
+    private final LatencyHistogram countDueTimer = dbTimer("countDueReminders");
+    private final LatencyHistogram claimTimer = dbTimer("claimReminders");
+    private final LatencyHistogram markSentTimer = dbTimer("markRemindersSent");
+    private final LatencyHistogram rescheduleTimer = dbTimer("rescheduleReminders");
+    private final LatencyHistogram leaseTimer = dbTimer("acquireLease");
+    private final LatencyHistogram remindersPageTimer = dbTimer("getRemindersPage");
+    private final LatencyHistogram getAllUsersTimer = dbTimer("getAllUsers");
+    private final Counter userCacheHits = MetricsRegistry.getInstance()
+            .counter("bot_user_cache_requests_total", "User cache lookups", "result", "hit");
+    private final Counter userCacheMisses = MetricsRegistry.getInstance()
+            .counter("bot_user_cache_requests_total", "User cache lookups", "result", "miss");
 
     private DatabaseManager() {
-        MongoClientConnection connection = MongoClientConnection.getInstance();
-        this.users = connection.getUsers();
-        this.reminders = connection.getReminders();
+        ConfigLoader config = ConfigLoader.getInstance();
+        this.userCache = new UserCache(config.getUserCacheMaxSize(), config.getUserCacheTtlMinutes(), TimeUnit.MINUTES);
+        this.reminderShardCount = config.getReminderShardCount();
+        String engine = config.getStorageEngine();
+        if ("embedded".equals(engine)) {
+            Path dir = Path.of(config.getEmbeddedStorageDir());
+            long syncMillis = config.getEmbeddedSyncIntervalMillis();
+            this.connection = null;
+            this.reminderWriter = null;
+            this.users = new EmbeddedUserRepository(dir.resolve("users.log"), syncMillis);
+            this.reminders = new EmbeddedReminderRepository(dir.resolve("reminders.log"), syncMillis);
+            this.leases = new EmbeddedLeaseRepository();
+        } else if ("mongo".equals(engine)) {
+            this.connection = MongoClientConnection.getInstance();
+            MongoReminderRepository mongoReminders = new MongoReminderRepository(connection.getReminders(),
+                    config.getReminderBatchMaxSize(), config.getReminderBatchMaxDelayMillis());
+            this.reminderWriter = mongoReminders.getWriter();
+            this.users = new MongoUserRepository(connection.getUsers(), connection.getReactiveUsers());
+            this.reminders = mongoReminders;
+            this.leases = new MongoLeaseRepository(connection.getLeases());
+        } else {
+            throw new RuntimeException("Unknown storage.engine: " + engine + " (expected mongo or embedded)");
+        }
+        System.out.println("💾 Storage engine: " + engine);
+    }
+
+    private static final class Holder {
+        private static final DatabaseManager INSTANCE = new DatabaseManager();
     }
 
-    public static synchronized DatabaseManager getInstance() {
-        if (instance == null) {
-            instance = new DatabaseManager();
+    public static DatabaseManager getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // Индексы нужны только движку mongo, встроенный строит свои при чтении журнала
+    public void ensureIndexes() {
+        if (connection != null) {
+            connection.ensureIndexes();
         }
-        return instance;
+    }
+
+    public void printStorageStats() {
+        if (connection != null) {
+            connection.printCollectionStats();
+        }
+    }
+
+    /**
+     * Проставляет шард неотправленным напоминаниям, созданным до разбиения на шарды.
+     * Повторный запуск ничего не делает; при смене числа шардов поле shard нужно сначала убрать.
+     */
+    public void backfillReminderShards() {
+        long updated = reminders.backfillShards(reminderShardCount);
+        if (updated > 0) {
+            System.out.println("🧩 Assigned shards to " + updated + " reminders");
+        }
+    }
+
+    private static LatencyHistogram dbTimer(String operation) {
+        return MetricsRegistry.getInstance().histogram("bot_db_operation_seconds",
+                "Storage operation latency", "op", operation);
     }
 
     public boolean isUserExist(User user) {
-        Document userDoc = users.find(Filters.eq("_id", user.getId())).first();
-        if (userDoc == null) {
+        long start = System.nanoTime();
+        User existing = users.findById(user.getId());
+        isUserExistTimer.recordSince(start);
+        if (existing == null) {
             addUser(user);
             return false;
         }
         return true;
     }
-    public boolean isUserExist(Update update) {
-        Document userDoc = users.find(Filters.eq("_id", update.getMessage().getFrom().getId())).first();
-        if (userDoc == null) {
-            return false;
+
+    public void addUser(User user) {
+        long start = System.nanoTime();
+        try {
+            users.insert(user);
+        } finally {
+            addUserTimer.recordSince(start);
         }
-        return true;
+        userCache.put(user);
     }
 
-    public void addUser(User user) {
-        Document userDoc = new Document("_id", user.getId())
-                .append("username", user.getUsername())
-                .append("firstName", user.getFirstName())
-                .append("timezone", user.getTimeZone().getId())
-                .append("city", user.getCity())
-                .append("hasSetCity", user.hasSetCity())
-                .append("isAdmin", user.isAdmin())
-                .append("isBanned", user.isBanned())
-                .append("registrationDate", new Date());
-        
-        users.insertOne(userDoc);
+    /**
+     * Регистрирует пользователя одним upsert, если его ещё нет.
+     * Возвращает уже существующего пользователя или null, если пользователь только что создан.
+     */
+    public User registerUserIfAbsent(User user) {
+        return registerUserIfAbsentAsync(user).toCompletableFuture().join();
+    }
+
+    // Результат приходит в потоке драйвера: продолжение, которое обращается к базе или ждёт, нужно переносить в свой пул
+    public CompletionStage<User> registerUserIfAbsentAsync(User user) {
+        long start = System.nanoTime();
+        return users.insertIfAbsentAsync(user).whenComplete((existing, error) -> {
+            registerUserTimer.recordSince(start);
+            if (error == null) {
+                userCache.put(existing != null ? existing : user);
+            }
+        });
     }
 
     public void updateUser(User user) {
-        users.updateOne(
-            Filters.eq("_id", user.getId()),
-            Updates.combine(
-                Updates.set("username", user.getUsername()),
-                Updates.set("firstName", user.getFirstName()),
-                Updates.set("timezone", user.getTimeZone().getId()),
-                Updates.set("isAdmin", user.isAdmin()),
-                Updates.set("isBanned", user.isBanned())
-            )
-        );
+        long start = System.nanoTime();
+        try {
+            users.updateProfile(user);
+        } finally {
+            updateUserTimer.recordSince(start);
+        }
+        userCache.invalidate(user.getId());
+        updateBannedSet(user.getId(), user.isBanned());
+    }
+
+    public void setUserBanned(long userId, boolean banned) {
+        long start = System.nanoTime();
+        try {
+            users.updateBanned(userId, banned);
+        } finally {
+            updateUserTimer.recordSince(start);
+        }
+        userCache.invalidate(userId);
+        updateBannedSet(userId, banned);
+    }
+
+    /**
+     * Загружает заблокированных пользователей при старте. До завершения загрузки множество пустое
+     * и блокировку проверяет ReminderService по профилю пользователя.
+     * Загрузки при старте и после открытия потока изменений не пересекаются.
+     */
+    public synchronized void loadBannedUsers() {
+        synchronized (bannedLock) {
+            bannedDuringLoad = new HashMap<>();
+        }
+        LongHashSet loaded = LongHashSet.of(users.findBannedIds());
+        // Блокировки, сделанные во время загрузки, могли не попасть в выборку: применяем их поверх
+        synchronized (bannedLock) {
+            bannedDuringLoad.forEach((userId, banned) -> {
+                if (banned) {
+                    loaded.add(userId);
+                } else {
+                    loaded.remove(userId);
+                }
+            });
+            bannedDuringLoad = null;
+            bannedUsers = loaded;
+        }
+        System.out.println("🚫 Loaded " + loaded.size() + " banned users");
+    }
+
+    // Проверка без обращения к базе и без блокировок: множество заменяется целиком при изменении
+    public boolean isUserBanned(long userId) {
+        return bannedUsers.contains(userId);
+    }
+
+    public int getBannedUserCount() {
+        return bannedUsers.size();
+    }
+
+    // Блокировки редки, поэтому меняем копию и публикуем её, чтобы чтение шло без синхронизации
+    private void updateBannedSet(long userId, boolean banned) {
+        synchronized (bannedLock) {
+            if (bannedDuringLoad != null) {
+                bannedDuringLoad.put(userId, banned);
+            }
+            if (bannedUsers.contains(userId) == banned) {
+                return;
+            }
+            LongHashSet updated = bannedUsers.copy();
+            if (banned) {
+                updated.add(userId);
+            } else {
+                updated.remove(userId);
+            }
+            bannedUsers = updated;
+        }
     }
 
 
 
     public User getUser(long userId) {
-        Document userDoc = users.find(Filters.eq("_id", userId)).first();
-        if (userDoc == null) {
-            return null;
+        return getUserAsync(userId).toCompletableFuture().join();
+    }
+
+    public CompletionStage<User> getUserAsync(long userId) {
+        User cached = userCache.get(userId);
+        if (cached != null) {
+            userCacheHits.increment();
+            return CompletableFuture.completedFuture(cached);
         }
+        userCacheMisses.increment();
+
+        long start = System.nanoTime();
+        return users.findByIdAsync(userId).whenComplete((user, error) -> {
+            getUserTimer.recordSince(start);
+            if (user != null) {
+                userCache.put(user);
+            }
+        });
+    }
 
-        return new User(
-                userDoc.getLong("_id"),
-                userDoc.getString("username"),
-                userDoc.getString("firstName"),
-                ZoneId.of(userDoc.getString("timezone")),
-                userDoc.getString("city"),
-                userDoc.getBoolean("isAdmin", false),
-                userDoc.getBoolean("isBanned", false),
-                userDoc.getBoolean("hasSetCity", false)
-        );
+    // Пользователь из кэша без обращения к базе; null, если его там нет
+    public User getCachedUser(long userId) {
+        User cached = userCache.get(userId);
+        (cached != null ? userCacheHits : userCacheMisses).increment();
+        return cached;
+    }
+
+    public int getUserCacheSize() {
+        return userCache.size();
     }
 
     public void updateUserCity(User user, String city, ZoneId timeZone) {
-        users.updateOne(
-            Filters.eq("_id", user.getId()),
-            Updates.combine(
-                Updates.set("city", city),
-                Updates.set("timezone", timeZone.getId()),
-                Updates.set("hasSetCity", true)
-            )
-        );
-    }
-
-    public void addReminder(String userId, String title, String text, String createdAt, String remindAt) {
-        Document reminderDoc = new Document("userId", userId)
-                .append("title", title)
-                .append("text", text)
-                .append("createdAt", createdAt)
-                .append("remindAt", remindAt)
-                .append("status", "active")
-                .append("isRepeating", false)
-                .append("isEnabled", true);
-        
-        reminders.insertOne(reminderDoc);
-    }
-
-    public void getAllReminders(String userId, MessageHandler messageHandler) {
-        List<Document> userReminders = new ArrayList<>();
-        reminders.find(Filters.eq("userId", userId)).into(userReminders);
-
-        if (userReminders.isEmpty()) {
-            messageHandler.sendTextMessage(userId, "📝 У вас пока нет напоминаний");
-            return;
+        updateUserCityAsync(user, city, timeZone).toCompletableFuture().join();
+    }
+
+    public CompletionStage<Void> updateUserCityAsync(User user, String city, ZoneId timeZone) {
+        long start = System.nanoTime();
+        return users.updateCityAsync(user.getId(), city, timeZone).whenComplete((result, error) -> {
+            updateUserCityTimer.recordSince(start);
+            if (error == null) {
+                user.setCity(city);
+                user.setTimeZone(timeZone);
+                user.setHasSetCity(true);
+            }
+            userCache.invalidate(user.getId());
+        });
+    }
+
+    public int getReminderShardCount() {
+        return reminderShardCount;
+    }
+
+    public int reminderShardOf(String userId) {
+        return ReminderShards.of(userId, reminderShardCount);
+    }
+
+    public ObjectId addReminder(String userId, String title, String text, Instant createdAt, Instant remindAt) {
+        return addReminderAsync(userId, title, text, createdAt, remindAt).join();
+    }
+
+    // Повторяющееся напоминание: remindAt - первое срабатывание правила в часовом поясе timeZone.
+    // flexibleTime - время выбрано по умолчанию, диспетчер может отправить напоминание немного раньше
+    public ObjectId addReminder(String userId, String title, String text, Instant createdAt, Instant remindAt,
+                                RecurrenceRule recurrence, ZoneId timeZone, boolean flexibleTime) {
+        return addReminderAsync(userId, title, text, createdAt, remindAt, recurrence, timeZone, flexibleTime).join();
+    }
+
+    public CompletableFuture<ObjectId> addReminderAsync(String userId, String title, String text, Instant createdAt, Instant remindAt) {
+        return addReminderAsync(userId, title, text, createdAt, remindAt, null, null, false);
+    }
+
+    // В Mongo вставка уходит в базу вместе с соседними в одном bulkWrite, future завершается после подтверждения
+    public CompletableFuture<ObjectId> addReminderAsync(String userId, String title, String text, Instant createdAt, Instant remindAt,
+                                                        RecurrenceRule recurrence, ZoneId timeZone, boolean flexibleTime) {
+        // Время вставки считается до подтверждения пачки, в которую попал документ
+        long start = System.nanoTime();
+        return reminders.insert(userId, reminderShardOf(userId), title, text, createdAt, remindAt, recurrence, timeZone, flexibleTime)
+                .whenComplete((id, error) -> addReminderTimer.recordSince(start));
+    }
+
+    // Пакетная запись есть только у движка mongo, для embedded возвращается null
+    public ReminderWriteBatcher getReminderWriter() {
+        return reminderWriter;
+    }
+
+    // Активные напоминания указанных шардов со сроком раньше until
+    public List<ScheduledReminder> getUpcomingReminders(Instant until, Set<Integer> shards) {
+        long start = System.nanoTime();
+        try {
+            return reminders.findActiveBefore(until, shards);
+        } finally {
+            upcomingRemindersTimer.recordSince(start);
         }
+    }
 
-        StringBuilder message = new StringBuilder("*Ваши напоминания:*\n\n");
-        int index = 1;
-        for (Document reminder : userReminders) {
-            String status = reminder.getString("status");
-            
-            message.append(String.format("*%d)* %s - %s\n",
-                index++,
-                reminder.getString("title"),
-                    reminder.getString("text")
-            ));
-            message.append(String.format("⏰ *%s*\n",
-                reminder.getString("remindAt")
-            ));
-            message.append("\n");
+    public long countDueReminders(Instant from, Instant until, Set<Integer> shards) {
+        long start = System.nanoTime();
+        try {
+            return reminders.countActiveBetween(from, until, shards);
+        } finally {
+            countDueTimer.recordSince(start);
         }
+    }
 
-        // Добавляем подсказку
-        //message.append("\n💡 *Статусы напоминаний:*\n");
+    // Возвращает id, которые захватил именно этот экземпляр: только их можно отправлять
+    public List<ObjectId> claimReminders(List<ObjectId> reminderIds, String owner) {
+        long start = System.nanoTime();
+        try {
+            return reminders.claim(reminderIds, owner);
+        } finally {
+            claimTimer.recordSince(start);
+        }
+    }
 
-        
-        messageHandler.sendTextMessage(userId, message.toString(), true);
+    public void rescheduleReminders(Map<ObjectId, Instant> nextRemindAt) {
+        long start = System.nanoTime();
+        try {
+            reminders.reschedule(nextRemindAt);
+        } finally {
+            rescheduleTimer.recordSince(start);
+        }
     }
 
-    public void getAllUsers(List<Document> usersList) {
-        users.find().into(usersList);
+    public long releaseStaleReminderClaims(Set<Integer> shards, Instant claimedBefore) {
+        return reminders.releaseStaleClaims(shards, claimedBefore);
     }
 
+    public void markRemindersSent(List<ObjectId> reminderIds) {
+        long start = System.nanoTime();
+        try {
+            reminders.markSent(reminderIds);
+        } finally {
+            markSentTimer.recordSince(start);
+        }
+    }
 
+    /**
+     * Страница напоминаний пользователя по ключу (remindAt, _id) без skip: следующая страница
+     * начинается после последнего показанного элемента, предыдущая заканчивается перед первым.
+     * Без курсора возвращается первая страница.
+     */
+    public ReminderPage getRemindersPage(String userId, Instant cursorRemindAt, ObjectId cursorId,
+                                         boolean forward, int offset, int pageSize) {
+        long start = System.nanoTime();
+        List<ScheduledReminder> page;
+        try {
+            page = reminders.findPage(userId, cursorRemindAt, cursorId, forward, pageSize + 1);
+        } finally {
+            remindersPageTimer.recordSince(start);
+        }
+
+        // Лишний элемент говорит о том, что в этом направлении есть ещё страница
+        boolean more = page.size() > pageSize;
+        if (more) {
+            page.remove(page.size() - 1);
+        }
+        if (forward) {
+            return new ReminderPage(page, offset, cursorId != null, more);
+        }
+        Collections.reverse(page);
+        return new ReminderPage(page, offset, more, true);
+    }
+
+    public boolean tryAcquireLease(String name, String owner, Instant now, Duration ttl) {
+        long start = System.nanoTime();
+        try {
+            return leases.tryAcquire(name, owner, now, ttl);
+        } finally {
+            leaseTimer.recordSince(start);
+        }
+    }
+
+    public void releaseLease(String name, String owner) {
+        leases.release(name, owner);
+    }
+
+    public Map<String, String> getLiveLeases(Instant now) {
+        return leases.findLive(now);
+    }
+
+    public List<User> getAllUsers() {
+        long start = System.nanoTime();
+        try {
+            return users.findAll();
+        } finally {
+            getAllUsersTimer.recordSince(start);
+        }
+    }
+
+    /**
+     * Подписывается на изменения users и reminders, сделанные другими экземплярами или вручную.
+     * Встроенное хранилище работает в одном процессе, ему следить не за чем.
+     */
+    public void watchChanges(ChangeStreamWatcher.ReminderListener reminderListener) {
+        ConfigLoader config = ConfigLoader.getInstance();
+        if (connection == null || !config.isMongoDbChangeStreamsEnabled()) {
+            return;
+        }
+        changeWatcher = new ChangeStreamWatcher(this, connection.getUsers(), connection.getReminders(),
+                Path.of(config.getMongoDbChangeStreamTokenFile()), reminderListener);
+        changeWatcher.start();
+    }
+
+    // Изменение пользователя из потока изменений; banned == null - блокировка не менялась
+    void onUserChanged(long userId, Boolean banned) {
+        userCache.invalidate(userId);
+        if (banned != null) {
+            updateBannedSet(userId, banned);
+        }
+    }
+
+    // Поток открыт без токена: изменения до его открытия могли пройти мимо
+    void resyncUsers() {
+        userCache.clear();
+        loadBannedUsers();
+    }
 
 
 
 
 
+
+
+    public void stopWatchingChanges() {
+        ChangeStreamWatcher watcher = changeWatcher;
+        changeWatcher = null;
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
     public void closeConnection() {
-        MongoClientConnection connection = MongoClientConnection.getInstance();
-        connection.close();
+        stopWatchingChanges();
+        reminders.close();
+        users.close();
+        if (connection != null) {
+            connection.close();
+        }
     }
 }
@@ -0,0 +1,96 @@
+package project.database;
+
+import org.bson.ByteBuf;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import project.model.ScheduledReminder;
+import project.model.User;
+import project.util.RecurrenceRule;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+
+/*
+Общий вид документов users и reminders. Встроенное хранилище пишет в журнал те же
+документы в BSON, что и Mongo, поэтому данные можно переносить между движками.
+ */
+final class DocumentMapper {
+    private static final DocumentCodec CODEC = new DocumentCodec();
+
+    private DocumentMapper() {
+    }
+
+    static Document userDocument(User user) {
+        return new Document("_id", user.getId())
+                .append("username", user.getUsername())
+                .append("firstName", user.getFirstName())
+                .append("timezone", user.getTimeZone().getId())
+                .append("city", user.getCity())
+                .append("hasSetCity", user.hasSetCity())
+                .append("isAdmin", user.isAdmin())
+                .append("isBanned", user.isBanned())
+                .append("registrationDate", new Date());
+    }
+
+    static User toUser(Document userDoc) {
+        return new User(
+                userDoc.getLong("_id"),
+                userDoc.getString("username"),
+                userDoc.getString("firstName"),
+                ZoneId.of(userDoc.getString("timezone")),
+                userDoc.getString("city"),
+                userDoc.getBoolean("isAdmin", false),
+                userDoc.getBoolean("isBanned", false),
+                userDoc.getBoolean("hasSetCity", false)
+        );
+    }
+
+    // Для повторяющегося напоминания хранится правило и часовой пояс, remindAt - только ближайшее срабатывание
+    static Document reminderDocument(String userId, int shard, String title, String text, Instant createdAt, Instant remindAt,
+                                     RecurrenceRule recurrence, ZoneId timeZone, boolean flexibleTime) {
+        Document reminderDoc = new Document("_id", new ObjectId())
+                .append("userId", userId)
+                .append("shard", shard)
+                .append("title", title)
+                .append("text", text)
+                .append("createdAt", Date.from(createdAt))
+                .append("remindAt", Date.from(remindAt))
+                .append("status", "active")
+                .append("isRepeating", recurrence != null)
+                .append("flexibleTime", flexibleTime)
+                .append("isEnabled", true);
+        if (recurrence != null) {
+            reminderDoc.append("recurrence", recurrence.toString())
+                    .append("timezone", timeZone.getId());
+        }
+        return reminderDoc;
+    }
+
+    static ScheduledReminder toScheduledReminder(Document reminderDoc) {
+        String recurrence = reminderDoc.getString("recurrence");
+        String timezone = reminderDoc.getString("timezone");
+        return new ScheduledReminder(
+                reminderDoc.getObjectId("_id"),
+                reminderDoc.getString("userId"),
+                reminderDoc.getString("title"),
+                reminderDoc.getString("text"),
+                reminderDoc.getDate("remindAt").toInstant(),
+                recurrence != null ? RecurrenceRule.parse(recurrence) : null,
+                timezone != null ? ZoneId.of(timezone) : null,
+                reminderDoc.getBoolean("flexibleTime", false));
+    }
+
+    static byte[] toBson(Document document) {
+        ByteBuf buffer = new RawBsonDocument(document, CODEC).getByteBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    static Document fromBson(byte[] bytes) {
+        return new RawBsonDocument(bytes).decode(CODEC);
+    }
+}
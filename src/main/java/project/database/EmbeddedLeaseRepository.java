@@ -0,0 +1,43 @@
+package project.database;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Встроенное хранилище открывается одним процессом, поэтому аренды живут в его памяти.
+Несколько экземпляров бота в одном процессе (например, в симуляции) делят их так же, как через Mongo.
+ */
+public class EmbeddedLeaseRepository implements LeaseRepository {
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean tryAcquire(String name, String owner, Instant now, Duration ttl) {
+        Lease acquired = leases.compute(name, (key, lease) ->
+                lease == null || lease.owner().equals(owner) || !lease.expiresAt().isAfter(now)
+                        ? new Lease(owner, now.plus(ttl))
+                        : lease);
+        return acquired.owner().equals(owner);
+    }
+
+    @Override
+    public void release(String name, String owner) {
+        leases.computeIfPresent(name, (key, lease) -> lease.owner().equals(owner) ? null : lease);
+    }
+
+    @Override
+    public Map<String, String> findLive(Instant now) {
+        Map<String, String> live = new HashMap<>();
+        leases.forEach((name, lease) -> {
+            if (lease.expiresAt().isAfter(now)) {
+                live.put(name, lease.owner());
+            }
+        });
+        return live;
+    }
+
+    private record Lease(String owner, Instant expiresAt) {
+    }
+}
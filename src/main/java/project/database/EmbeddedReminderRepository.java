@@ -0,0 +1,313 @@
+package project.database;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import project.model.ScheduledReminder;
+import project.util.RecurrenceRule;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+Напоминания во встроенном журнале. Первичный индекс _id -> смещение последней версии документа,
+вместо индексов Mongo - упорядоченные по (remindAt, _id) множества: активные напоминания
+для диспетчера и все напоминания каждого пользователя для постраничного списка.
+Захваченные на отправку (sending) хранятся отдельным множеством для возврата зависших.
+ */
+public class EmbeddedReminderRepository implements ReminderRepository {
+    private static final ObjectId MIN_ID = new ObjectId(new byte[12]);
+    private static final Comparator<Key> KEY_ORDER = Comparator.comparingLong(Key::remindAtMillis).thenComparing(Key::id);
+
+    private final MappedLog log;
+    private final Map<ObjectId, Entry> index = new HashMap<>();
+    private final NavigableSet<Key> active = new TreeSet<>(KEY_ORDER);
+    private final Map<String, NavigableSet<Key>> byUser = new HashMap<>();
+    private final Set<ObjectId> sending = new HashSet<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public EmbeddedReminderRepository(Path file, long syncIntervalMillis) {
+        try {
+            this.log = MappedLog.open(file, syncIntervalMillis,
+                    (offset, payload) -> apply(DocumentMapper.fromBson(payload), offset));
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening reminder log " + file, e);
+        }
+        System.out.println("📂 Loaded " + index.size() + " reminders (" + active.size() + " active) from " + file);
+    }
+
+    // Каждая отправка дописывает новую версию документа, старые выбрасываются при открытии
+    private void compactIfNeeded() throws IOException {
+        if (log.getRecordCount() <= 2L * index.size() + 1000) {
+            return;
+        }
+        List<Entry> entries = new ArrayList<>(index.values());
+        long[] offsets = new long[entries.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = entries.get(i).offset;
+        }
+        long[] moved = log.compact(offsets);
+        for (int i = 0; i < offsets.length; i++) {
+            entries.get(i).offset = moved[i];
+        }
+    }
+
+    @Override
+    public CompletableFuture<ObjectId> insert(String userId, int shard, String title, String text, Instant createdAt, Instant remindAt,
+                                              RecurrenceRule recurrence, ZoneId timeZone, boolean flexibleTime) {
+        Document reminderDoc = DocumentMapper.reminderDocument(userId, shard, title, text, createdAt, remindAt,
+                recurrence, timeZone, flexibleTime);
+        lock.writeLock().lock();
+        try {
+            write(reminderDoc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return CompletableFuture.completedFuture(reminderDoc.getObjectId("_id"));
+    }
+
+    @Override
+    public List<ScheduledReminder> findActiveBefore(Instant until, Set<Integer> shards) {
+        lock.readLock().lock();
+        try {
+            List<ScheduledReminder> upcoming = new ArrayList<>();
+            for (Key key : active.headSet(new Key(until.toEpochMilli(), MIN_ID), false)) {
+                if (shards.contains(index.get(key.id()).shard)) {
+                    upcoming.add(load(key.id()));
+                }
+            }
+            return upcoming;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long countActiveBetween(Instant from, Instant until, Set<Integer> shards) {
+        lock.readLock().lock();
+        try {
+            long count = 0;
+            for (Key key : active.subSet(new Key(from.toEpochMilli(), MIN_ID), true, new Key(until.toEpochMilli(), MIN_ID), false)) {
+                if (shards.contains(index.get(key.id()).shard)) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ObjectId> claim(List<ObjectId> reminderIds, String owner) {
+        Date claimedAt = new Date();
+        List<ObjectId> claimed = new ArrayList<>(reminderIds.size());
+        lock.writeLock().lock();
+        try {
+            for (ObjectId id : reminderIds) {
+                Entry entry = index.get(id);
+                if (entry == null || !active.contains(entry.key)) {
+                    continue;
+                }
+                Document reminderDoc = DocumentMapper.fromBson(log.read(entry.offset));
+                reminderDoc.append("status", "sending").append("claimedBy", owner).append("claimedAt", claimedAt);
+                write(reminderDoc);
+                claimed.add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return claimed;
+    }
+
+    @Override
+    public void markSent(List<ObjectId> reminderIds) {
+        Date sentAt = new Date();
+        lock.writeLock().lock();
+        try {
+            for (ObjectId id : reminderIds) {
+                Entry entry = index.get(id);
+                if (entry == null) {
+                    continue;
+                }
+                Document reminderDoc = DocumentMapper.fromBson(log.read(entry.offset));
+                reminderDoc.append("status", "sent").append("sentAt", sentAt);
+                write(reminderDoc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reschedule(Map<ObjectId, Instant> nextRemindAt) {
+        Date sentAt = new Date();
+        lock.writeLock().lock();
+        try {
+            nextRemindAt.forEach((id, remindAt) -> {
+                Entry entry = index.get(id);
+                if (entry == null || !sending.contains(id)) {
+                    return;
+                }
+                Document reminderDoc = DocumentMapper.fromBson(log.read(entry.offset));
+                reminderDoc.append("status", "active")
+                        .append("remindAt", Date.from(remindAt))
+                        .append("lastSentAt", sentAt);
+                reminderDoc.remove("claimedBy");
+                reminderDoc.remove("claimedAt");
+                write(reminderDoc);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long releaseStaleClaims(Set<Integer> shards, Instant claimedBefore) {
+        lock.writeLock().lock();
+        try {
+            long released = 0;
+            for (ObjectId id : List.copyOf(sending)) {
+                Entry entry = index.get(id);
+                if (!shards.contains(entry.shard)) {
+                    continue;
+                }
+                Document reminderDoc = DocumentMapper.fromBson(log.read(entry.offset));
+                Date claimedAt = reminderDoc.getDate("claimedAt");
+                if (claimedAt != null && !claimedAt.toInstant().isBefore(claimedBefore)) {
+                    continue;
+                }
+                reminderDoc.append("status", "active");
+                reminderDoc.remove("claimedBy");
+                reminderDoc.remove("claimedAt");
+                write(reminderDoc);
+                released++;
+            }
+            return released;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long backfillShards(int shardCount) {
+        lock.writeLock().lock();
+        try {
+            List<ObjectId> unsharded = new ArrayList<>();
+            for (Key key : active) {
+                if (index.get(key.id()).shard < 0) {
+                    unsharded.add(key.id());
+                }
+            }
+            for (ObjectId id : sending) {
+                if (index.get(id).shard < 0) {
+                    unsharded.add(id);
+                }
+            }
+            for (ObjectId id : unsharded) {
+                Document reminderDoc = DocumentMapper.fromBson(log.read(index.get(id).offset));
+                reminderDoc.append("shard", ReminderShards.of(index.get(id).userId, shardCount));
+                write(reminderDoc);
+            }
+            return unsharded.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ScheduledReminder> findPage(String userId, Instant cursorRemindAt, ObjectId cursorId, boolean forward, int limit) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Key> keys = byUser.get(userId);
+            List<ScheduledReminder> page = new ArrayList<>(limit);
+            if (keys == null) {
+                return page;
+            }
+            if (cursorId != null) {
+                Key cursor = new Key(cursorRemindAt.toEpochMilli(), cursorId);
+                keys = forward ? keys.tailSet(cursor, false) : keys.headSet(cursor, false);
+            }
+            Iterator<Key> iterator = forward ? keys.iterator() : keys.descendingIterator();
+            while (page.size() < limit && iterator.hasNext()) {
+                page.add(load(iterator.next().id()));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private ScheduledReminder load(ObjectId id) {
+        return DocumentMapper.toScheduledReminder(DocumentMapper.fromBson(log.read(index.get(id).offset)));
+    }
+
+    private void write(Document reminderDoc) {
+        long offset = log.append(DocumentMapper.toBson(reminderDoc));
+        apply(reminderDoc, offset);
+    }
+
+    // Новая версия документа заменяет предыдущую во всех индексах
+    private void apply(Document reminderDoc, long offset) {
+        ObjectId id = reminderDoc.getObjectId("_id");
+        Entry previous = index.get(id);
+        if (previous != null) {
+            active.remove(previous.key);
+            NavigableSet<Key> userKeys = byUser.get(previous.userId);
+            if (userKeys != null) {
+                userKeys.remove(previous.key);
+            }
+            sending.remove(id);
+        }
+
+        Date remindAt = reminderDoc.getDate("remindAt");
+        String userId = reminderDoc.getString("userId");
+        Key key = new Key(remindAt.getTime(), id);
+        // -1 - напоминание из журнала, записанного до разбиения на шарды
+        index.put(id, new Entry(offset, key, userId, reminderDoc.getInteger("shard", -1)));
+        byUser.computeIfAbsent(userId, ignored -> new TreeSet<>(KEY_ORDER)).add(key);
+        String status = reminderDoc.getString("status");
+        if ("active".equals(status)) {
+            active.add(key);
+        } else if ("sending".equals(status)) {
+            sending.add(id);
+        }
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+
+    private record Key(long remindAtMillis, ObjectId id) {
+    }
+
+    private static final class Entry {
+        private long offset;
+        private final Key key;
+        private final String userId;
+        private final int shard;
+
+        private Entry(long offset, Key key, String userId, int shard) {
+            this.offset = offset;
+            this.key = key;
+            this.userId = userId;
+            this.shard = shard;
+        }
+    }
+}
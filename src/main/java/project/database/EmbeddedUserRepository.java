@@ -0,0 +1,194 @@
+package project.database;
+
+import org.bson.Document;
+import project.model.User;
+import project.util.LongHashMap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/*
+Пользователи во встроенном журнале: каждое изменение дописывает документ пользователя целиком,
+индекс в памяти хранит смещение последней версии. Чтение - разбор BSON прямо из отображения файла.
+ */
+public class EmbeddedUserRepository implements UserRepository {
+    private final MappedLog log;
+    private final LongHashMap<Long> index = new LongHashMap<>(1024);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public EmbeddedUserRepository(Path file, long syncIntervalMillis) {
+        try {
+            this.log = MappedLog.open(file, syncIntervalMillis,
+                    (offset, payload) -> index.put(DocumentMapper.fromBson(payload).getLong("_id"), offset));
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening user log " + file, e);
+        }
+        System.out.println("📂 Loaded " + index.size() + " users from " + file);
+    }
+
+    // Старые версии документов выбрасываются, когда занимают больше половины журнала
+    private void compactIfNeeded() throws IOException {
+        if (log.getRecordCount() <= 2L * index.size() + 1000) {
+            return;
+        }
+        long[] ids = new long[index.size()];
+        long[] offsets = new long[index.size()];
+        int[] count = {0};
+        index.forEach((id, offset) -> {
+            ids[count[0]] = id;
+            offsets[count[0]++] = offset;
+        });
+        long[] moved = log.compact(offsets);
+        for (int i = 0; i < ids.length; i++) {
+            index.put(ids[i], moved[i]);
+        }
+    }
+
+    @Override
+    public User findById(long userId) {
+        Document userDoc = read(userId);
+        return userDoc == null ? null : DocumentMapper.toUser(userDoc);
+    }
+
+    @Override
+    public void insert(User user) {
+        lock.writeLock().lock();
+        try {
+            if (index.get(user.getId()) != null) {
+                throw new IllegalStateException("User " + user.getId() + " already exists");
+            }
+            write(DocumentMapper.userDocument(user));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public User insertIfAbsent(User user) {
+        lock.writeLock().lock();
+        try {
+            Long offset = index.get(user.getId());
+            if (offset != null) {
+                return DocumentMapper.toUser(DocumentMapper.fromBson(log.read(offset)));
+            }
+            write(DocumentMapper.userDocument(user));
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateProfile(User user) {
+        update(user.getId(), userDoc -> userDoc
+                .append("username", user.getUsername())
+                .append("firstName", user.getFirstName())
+                .append("timezone", user.getTimeZone().getId())
+                .append("isAdmin", user.isAdmin())
+                .append("isBanned", user.isBanned()));
+    }
+
+    @Override
+    public void updateCity(long userId, String city, ZoneId timeZone) {
+        update(userId, userDoc -> userDoc
+                .append("city", city)
+                .append("timezone", timeZone.getId())
+                .append("hasSetCity", true));
+    }
+
+    @Override
+    public void updateBanned(long userId, boolean banned) {
+        update(userId, userDoc -> userDoc.append("isBanned", banned));
+    }
+
+    // Отдельного индекса нет: перебор журнала, выполняется только при старте
+    @Override
+    public long[] findBannedIds() {
+        lock.readLock().lock();
+        try {
+            long[] banned = new long[index.size()];
+            int[] count = {0};
+            index.forEach((id, offset) -> {
+                if (DocumentMapper.fromBson(log.read(offset)).getBoolean("isBanned", false)) {
+                    banned[count[0]++] = id;
+                }
+            });
+            return Arrays.copyOf(banned, count[0]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<User> findAll() {
+        lock.readLock().lock();
+        try {
+            List<User> all = new ArrayList<>(index.size());
+            index.forEach((id, offset) -> all.add(DocumentMapper.toUser(DocumentMapper.fromBson(log.read(offset)))));
+            return all;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Журнал в памяти отвечает сразу, поэтому асинхронные варианты возвращают готовый результат
+    @Override
+    public CompletionStage<User> findByIdAsync(long userId) {
+        return CompletableFuture.completedFuture(findById(userId));
+    }
+
+    @Override
+    public CompletionStage<User> insertIfAbsentAsync(User user) {
+        return CompletableFuture.completedFuture(insertIfAbsent(user));
+    }
+
+    @Override
+    public CompletionStage<Void> updateCityAsync(long userId, String city, ZoneId timeZone) {
+        updateCity(userId, city, timeZone);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private Document read(long userId) {
+        lock.readLock().lock();
+        try {
+            Long offset = index.get(userId);
+            return offset == null ? null : DocumentMapper.fromBson(log.read(offset));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Как updateOne в Mongo: отсутствующий пользователь молча пропускается
+    private void update(long userId, Consumer<Document> change) {
+        lock.writeLock().lock();
+        try {
+            Long offset = index.get(userId);
+            if (offset == null) {
+                return;
+            }
+            Document userDoc = DocumentMapper.fromBson(log.read(offset));
+            change.accept(userDoc);
+            write(userDoc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(Document userDoc) {
+        index.put(userDoc.getLong("_id"), log.append(DocumentMapper.toBson(userDoc)));
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+}
@@ -0,0 +1,24 @@
+package project.database;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+/*
+Аренды с ограниченным сроком: кто владеет шардом напоминаний и какие экземпляры бота живы.
+Реализации: MongoLeaseRepository (коллекция leases) и EmbeddedLeaseRepository (в памяти процесса).
+ */
+public interface LeaseRepository {
+
+    /**
+     * Берёт или продлевает аренду name до now + ttl. Успешно, если аренда свободна, истекла
+     * или уже принадлежит owner; false, если ею владеет другой экземпляр.
+     */
+    boolean tryAcquire(String name, String owner, Instant now, Duration ttl);
+
+    // Отпускает аренду досрочно, если она всё ещё принадлежит owner
+    void release(String name, String owner);
+
+    // Действующие на момент now аренды: имя -> владелец
+    Map<String, String> findLive(Instant now);
+}
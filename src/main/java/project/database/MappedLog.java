@@ -0,0 +1,231 @@
+package project.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/*
+Журнал только для дописывания в файле, отображённом в память.
+Запись: [длина int][CRC32C int][данные]; нулевая длина означает конец журнала.
+При открытии журнал читается с начала, все записи передаются обработчику. Первая запись
+с неверной длиной или контрольной суммой (оборванная при сбое) и всё после неё отбрасываются.
+Сброс на диск - после каждой записи (syncIntervalMillis = 0) или фоном раз в syncIntervalMillis.
+ */
+public class MappedLog {
+    private static final int HEADER_BYTES = 8;
+    private static final long INITIAL_CAPACITY = 16L << 20;
+    // MappedByteBuffer адресуется int, поэтому один журнал не больше 2 ГБ
+    private static final long MAX_CAPACITY = Integer.MAX_VALUE;
+
+    private final Path file;
+    private final long syncIntervalMillis;
+    private final ScheduledExecutorService syncer;
+    private FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    private int position;
+    private long recordCount;
+    private boolean dirty;
+
+    public interface RecordHandler {
+        void accept(long offset, byte[] payload);
+    }
+
+    private MappedLog(Path file, long syncIntervalMillis) {
+        this.file = file;
+        this.syncIntervalMillis = syncIntervalMillis;
+        if (syncIntervalMillis > 0) {
+            this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "log-sync-" + file.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.syncer.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.syncer = null;
+        }
+    }
+
+    public static MappedLog open(Path file, long syncIntervalMillis, RecordHandler handler) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        MappedLog log = new MappedLog(file, syncIntervalMillis);
+        log.map();
+        log.recover(handler);
+        return log;
+    }
+
+    private void map() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size > MAX_CAPACITY) {
+            throw new IOException(file + " is larger than " + MAX_CAPACITY + " bytes");
+        }
+        long capacity = INITIAL_CAPACITY;
+        while (capacity < size) {
+            capacity = Math.min(MAX_CAPACITY, capacity * 2);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void recover(RecordHandler handler) {
+        MappedByteBuffer current = buffer;
+        int capacity = current.capacity();
+        int offset = 0;
+        while (offset + HEADER_BYTES <= capacity) {
+            int length = current.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || length > capacity - offset - HEADER_BYTES) {
+                discardTail(offset, "bad length " + length);
+                break;
+            }
+            byte[] payload = new byte[length];
+            current.get(offset + HEADER_BYTES, payload);
+            if (crc(payload) != current.getInt(offset + 4)) {
+                discardTail(offset, "checksum mismatch");
+                break;
+            }
+            handler.accept(offset, payload);
+            recordCount++;
+            offset += HEADER_BYTES + length;
+        }
+        position = offset;
+    }
+
+    // Хвост обнуляется, иначе уцелевшая после оборванной запись могла бы снова стать видимой
+    private void discardTail(int offset, String reason) {
+        System.err.println("Log " + file + ": discarding tail from offset " + offset + " (" + reason + ")");
+        MappedByteBuffer current = buffer;
+        for (int i = offset; i < current.capacity(); i++) {
+            current.put(i, (byte) 0);
+        }
+        current.force();
+    }
+
+    /**
+     * Дописывает запись и возвращает её смещение.
+     */
+    public synchronized long append(byte[] payload) {
+        int recordBytes = HEADER_BYTES + payload.length;
+        ensureCapacity((long) position + recordBytes + HEADER_BYTES);
+        MappedByteBuffer current = buffer;
+        int offset = position;
+        current.put(offset + HEADER_BYTES, payload);
+        current.putInt(offset + 4, crc(payload));
+        // Длина пишется последней: до неё запись для чтения при восстановлении не существует
+        current.putInt(offset, payload.length);
+        position = offset + recordBytes;
+        recordCount++;
+        if (syncIntervalMillis <= 0) {
+            current.force(offset, recordBytes);
+        } else {
+            dirty = true;
+        }
+        return offset;
+    }
+
+    // Читать можно только смещения, которые вернул append или передал обработчик при открытии
+    public byte[] read(long offset) {
+        MappedByteBuffer current = buffer;
+        int length = current.getInt((int) offset);
+        byte[] payload = new byte[length];
+        current.get((int) offset + HEADER_BYTES, payload);
+        return payload;
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    public synchronized long getSize() {
+        return position;
+    }
+
+    /**
+     * Переписывает журнал, оставляя только записи по смещениям offsets (в том же порядке),
+     * и возвращает их новые смещения. Вызывается, пока журналом никто не пользуется.
+     */
+    public synchronized long[] compact(long[] offsets) throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        long[] newOffsets = new long[offsets.length];
+        long written = 0;
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < offsets.length; i++) {
+                byte[] payload = read(offsets[i]);
+                ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+                record.putInt(payload.length).putInt(crc(payload)).put(payload).flip();
+                newOffsets[i] = written;
+                while (record.hasRemaining()) {
+                    written += out.write(record);
+                }
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map();
+        System.out.println("Log " + file + " compacted: " + recordCount + " -> " + offsets.length + " records");
+        position = (int) written;
+        recordCount = offsets.length;
+        dirty = false;
+        return newOffsets;
+    }
+
+    private void ensureCapacity(long required) {
+        MappedByteBuffer current = buffer;
+        if (required <= current.capacity()) {
+            return;
+        }
+        if (required > MAX_CAPACITY) {
+            throw new IllegalStateException("Log " + file + " is full");
+        }
+        long capacity = current.capacity();
+        while (capacity < required) {
+            capacity = Math.min(MAX_CAPACITY, capacity * 2);
+        }
+        try {
+            // Старое отображение остаётся рабочим для читателей, которые уже его взяли
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot grow log " + file, e);
+        }
+    }
+
+    private synchronized void sync() {
+        if (dirty) {
+            buffer.force(0, position);
+            dirty = false;
+        }
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    public synchronized void close() {
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        try {
+            buffer.force(0, position);
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing log " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -9,25 +9,36 @@ import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
 import org.bson.Document;
 import project.config.ConfigLoader;
 
+import java.util.concurrent.TimeUnit;
+
 public class MongoClientConnection {
-    private static MongoClientConnection instance;
     private MongoClient mongoClient;
     private MongoDatabase database;
     private MongoCollection<Document> users;
     private MongoCollection<Document> reminders;
+    private MongoCollection<Document> leases;
+    // Неблокирующий клиент для горячего пути обработки сообщений, пул у него свой
+    private com.mongodb.reactivestreams.client.MongoClient reactiveClient;
+    private com.mongodb.reactivestreams.client.MongoCollection<Document> reactiveUsers;
 
     private MongoClientConnection() {
         connectToMongoDB();
     }
 
-    public static synchronized MongoClientConnection getInstance() {
-        if (instance == null) {
-            instance = new MongoClientConnection();
-        }
-        return instance;
+    // Ленивая инициализация через вложенный класс: без монитора на каждом вызове,
+    // который в synchronized-методе мог бы прикрепить виртуальный поток к несущему
+    private static final class Holder {
+        private static final MongoClientConnection INSTANCE = new MongoClientConnection();
+    }
+
+    public static MongoClientConnection getInstance() {
+        return Holder.INSTANCE;
     }
 
     private void connectToMongoDB() {
@@ -42,41 +53,67 @@ public class MongoClientConnection {
             throw new RuntimeException("MongoDB database name is not configured. Please set mongodb.database.name in application.properties");
         }
 
-        ServerApi serverApi = ServerApi.builder()
-                .version(ServerApiVersion.V1)
-                .build();
-
-        MongoClientSettings settings = MongoClientSettings.builder()
+        MongoClientSettings.Builder settings = MongoClientSettings.builder()
                 .applyConnectionString(new ConnectionString(connectionString))
-                .serverApi(serverApi)
-                .build();
+                .applyToConnectionPoolSettings(pool -> pool
+                        .maxSize(config.getMongoDbPoolMaxSize())
+                        .minSize(config.getMongoDbPoolMinSize())
+                        .maxConnecting(config.getMongoDbPoolMaxConnecting())
+                        .maxWaitTime(config.getMongoDbPoolMaxWaitMillis(), TimeUnit.MILLISECONDS));
+        if (config.isMongoDbServerApiEnabled()) {
+            settings.serverApi(ServerApi.builder()
+                    .version(ServerApiVersion.V1)
+                    .build());
+        }
 
         try {
-            //перенести в ConsoleLoggingService
+            //перенести в AsyncLoggingService
 
             System.out.println("Connecting to MongoDB...");
-            mongoClient = MongoClients.create(settings);
+            MongoClientSettings clientSettings = settings.build();
+            mongoClient = MongoClients.create(clientSettings);
             database = mongoClient.getDatabase(databaseName);
+            reactiveClient = com.mongodb.reactivestreams.client.MongoClients.create(clientSettings);
+            reactiveUsers = reactiveClient.getDatabase(databaseName).getCollection("users");
             
             // Проверяем подключение
             database.runCommand(new Document("ping", 1));
             System.out.println("✅ Successfully connected to MongoDB!");
             System.out.println("📊 Database: " + databaseName);
             
-            // Инициализируем коллекции
+            // Инициализируем коллекции; индексы и статистика - отдельными фазами запуска
             users = database.getCollection("users");
             reminders = database.getCollection("reminders");
-            
-            // Выводим статистику коллекций
-            System.out.println("📈 Collections status:");
-            System.out.println(" • Users: " + users.countDocuments() + " documents");
-            System.out.println(" • Reminders: " + reminders.countDocuments() + " documents");
+            leases = database.getCollection("leases");
         } catch (MongoException e) {
             System.err.println("❌ Failed to connect to MongoDB: " + e.getMessage());
             throw new RuntimeException("Failed to connect to MongoDB", e);
         }
     }
 
+    // createIndex идемпотентен, поэтому безопасно выполнять его при каждом старте
+    public void ensureIndexes() {
+        // Диспетчер выбирает напоминания только своих шардов
+        reminders.createIndex(
+                Indexes.compoundIndex(Indexes.ascending("status"), Indexes.ascending("shard"), Indexes.ascending("remindAt")),
+                new IndexOptions().name("status_shard_remindAt"));
+        // _id в конце нужен для постраничного списка по ключу (remindAt, _id) без сортировки в памяти
+        reminders.createIndex(
+                Indexes.compoundIndex(Indexes.ascending("userId"), Indexes.ascending("remindAt"), Indexes.ascending("_id")),
+                new IndexOptions().name("userId_remindAt_id"));
+        // Только заблокированные: список для проверки при старте читается целиком из маленького индекса
+        users.createIndex(Indexes.ascending("isBanned"),
+                new IndexOptions().name("isBanned_true").partialFilterExpression(Filters.eq("isBanned", true)));
+        System.out.println("🗂 Reminder and user indexes are in place");
+    }
+
+    // Оценка по метаданным коллекции вместо полного countDocuments
+    public void printCollectionStats() {
+        System.out.println("📈 Collections status:");
+        System.out.println(" • Users: ~" + users.estimatedDocumentCount() + " documents");
+        System.out.println(" • Reminders: ~" + reminders.estimatedDocumentCount() + " documents");
+    }
+
     public MongoDatabase getDatabase() {
         if (database == null) {
             throw new IllegalStateException("Database connection is not established. Please connect first.");
@@ -98,13 +135,33 @@ public class MongoClientConnection {
         return reminders;
     }
 
+    public MongoCollection<Document> getLeases() {
+        if (leases == null) {
+            throw new IllegalStateException("Leases collection is not initialized.");
+        }
+        return leases;
+    }
+
+    public com.mongodb.reactivestreams.client.MongoCollection<Document> getReactiveUsers() {
+        if (reactiveUsers == null) {
+            throw new IllegalStateException("Users collection is not initialized.");
+        }
+        return reactiveUsers;
+    }
+
     public void close() {
+        if (reactiveClient != null) {
+            reactiveClient.close();
+            reactiveClient = null;
+            reactiveUsers = null;
+        }
         if (mongoClient != null) {
             mongoClient.close();
             mongoClient = null;
             database = null;
             users = null;
             reminders = null;
+            leases = null;
         }
     }
 }
@@ -0,0 +1,67 @@
+package project.database;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Документ аренды: {_id: имя, owner, expiresAt}. Захват - один findOneAndUpdate с upsert:
+фильтр совпадает только со свободной, истёкшей или своей арендой, иначе upsert упирается
+в уникальный _id, и это значит, что аренда занята.
+Сроки считаются по часам экземпляров, расхождение часов должно быть заметно меньше ttl.
+ */
+public class MongoLeaseRepository implements LeaseRepository {
+    private final MongoCollection<Document> leases;
+
+    public MongoLeaseRepository(MongoCollection<Document> leases) {
+        this.leases = leases;
+    }
+
+    @Override
+    public boolean tryAcquire(String name, String owner, Instant now, Duration ttl) {
+        try {
+            Document lease = leases.findOneAndUpdate(
+                Filters.and(
+                    Filters.eq("_id", name),
+                    Filters.or(Filters.eq("owner", owner), Filters.lte("expiresAt", Date.from(now)))),
+                Updates.combine(
+                    Updates.set("owner", owner),
+                    Updates.set("expiresAt", Date.from(now.plus(ttl)))),
+                new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER));
+            return lease != null;
+        } catch (MongoCommandException e) {
+            if (ErrorCategory.fromErrorCode(e.getErrorCode()) == ErrorCategory.DUPLICATE_KEY) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void release(String name, String owner) {
+        leases.updateOne(
+            Filters.and(Filters.eq("_id", name), Filters.eq("owner", owner)),
+            Updates.set("expiresAt", new Date(0)));
+    }
+
+    @Override
+    public Map<String, String> findLive(Instant now) {
+        Map<String, String> live = new HashMap<>();
+        leases.find(Filters.gt("expiresAt", Date.from(now)))
+                .projection(Projections.include("owner"))
+                .forEach(lease -> live.put(lease.getString("_id"), lease.getString("owner")));
+        return live;
+    }
+}
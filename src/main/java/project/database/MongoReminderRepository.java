@@ -0,0 +1,211 @@
+package project.database;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import project.model.ScheduledReminder;
+import project.util.RecurrenceRule;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class MongoReminderRepository implements ReminderRepository {
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    private final MongoCollection<Document> reminders;
+    private final ReminderWriteBatcher writer;
+
+    public MongoReminderRepository(MongoCollection<Document> reminders, int batchMaxSize, long batchMaxDelayMillis) {
+        this.reminders = reminders;
+        this.writer = new ReminderWriteBatcher(reminders, batchMaxSize, batchMaxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Вставка уходит в базу вместе с соседними в одном bulkWrite, future завершается после подтверждения
+    @Override
+    public CompletableFuture<ObjectId> insert(String userId, int shard, String title, String text, Instant createdAt, Instant remindAt,
+                                              RecurrenceRule recurrence, ZoneId timeZone, boolean flexibleTime) {
+        return writer.insert(DocumentMapper.reminderDocument(userId, shard, title, text, createdAt, remindAt,
+                recurrence, timeZone, flexibleTime));
+    }
+
+    // Выборка идёт по индексу {status, shard, remindAt}
+    @Override
+    public List<ScheduledReminder> findActiveBefore(Instant until, Set<Integer> shards) {
+        List<ScheduledReminder> upcoming = new ArrayList<>();
+        if (shards.isEmpty()) {
+            return upcoming;
+        }
+        reminders.find(Filters.and(
+                        Filters.eq("status", "active"),
+                        Filters.in("shard", shards),
+                        Filters.lt("remindAt", Date.from(until))))
+                .projection(Projections.include("userId", "title", "text", "remindAt", "recurrence", "timezone", "flexibleTime"))
+                .sort(Sorts.ascending("remindAt"))
+                .forEach(reminder -> upcoming.add(DocumentMapper.toScheduledReminder(reminder)));
+        return upcoming;
+    }
+
+    // Счёт идёт по тому же индексу, документы не читаются
+    @Override
+    public long countActiveBetween(Instant from, Instant until, Set<Integer> shards) {
+        if (shards.isEmpty()) {
+            return 0;
+        }
+        return reminders.countDocuments(Filters.and(
+                Filters.eq("status", "active"),
+                Filters.in("shard", shards),
+                Filters.gte("remindAt", Date.from(from)),
+                Filters.lt("remindAt", Date.from(until))));
+    }
+
+    // Каждый документ меняется атомарно, поэтому из нескольких экземпляров напоминание захватит только один.
+    // Свои документы находим по метке вызова, поиск идёт по _id
+    @Override
+    public List<ObjectId> claim(List<ObjectId> reminderIds, String owner) {
+        List<ObjectId> claimed = new ArrayList<>(reminderIds.size());
+        if (reminderIds.isEmpty()) {
+            return claimed;
+        }
+        ObjectId claimToken = new ObjectId();
+        reminders.updateMany(
+            Filters.and(Filters.in("_id", reminderIds), Filters.eq("status", "active")),
+            Updates.combine(
+                Updates.set("status", "sending"),
+                Updates.set("claimedBy", owner),
+                Updates.set("claimToken", claimToken),
+                Updates.set("claimedAt", new Date())
+            )
+        );
+        reminders.find(Filters.and(Filters.in("_id", reminderIds), Filters.eq("claimToken", claimToken)))
+                .projection(Projections.include("_id"))
+                .forEach(reminder -> claimed.add(reminder.getObjectId("_id")));
+        return claimed;
+    }
+
+    @Override
+    public void markSent(List<ObjectId> reminderIds) {
+        reminders.updateMany(
+            Filters.in("_id", reminderIds),
+            Updates.combine(
+                Updates.set("status", "sent"),
+                Updates.set("sentAt", new Date()),
+                Updates.unset("claimToken")
+            )
+        );
+    }
+
+    @Override
+    public void reschedule(Map<ObjectId, Instant> nextRemindAt) {
+        if (nextRemindAt.isEmpty()) {
+            return;
+        }
+        Date sentAt = new Date();
+        List<WriteModel<Document>> updates = new ArrayList<>(nextRemindAt.size());
+        nextRemindAt.forEach((id, remindAt) -> updates.add(new UpdateOneModel<>(
+            Filters.and(Filters.eq("_id", id), Filters.eq("status", "sending")),
+            Updates.combine(
+                Updates.set("status", "active"),
+                Updates.set("remindAt", Date.from(remindAt)),
+                Updates.set("lastSentAt", sentAt),
+                Updates.unset("claimedBy"),
+                Updates.unset("claimToken"),
+                Updates.unset("claimedAt")
+            ))));
+        reminders.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+    }
+
+    @Override
+    public long releaseStaleClaims(Set<Integer> shards, Instant claimedBefore) {
+        if (shards.isEmpty()) {
+            return 0;
+        }
+        return reminders.updateMany(
+            Filters.and(
+                Filters.eq("status", "sending"),
+                Filters.in("shard", shards),
+                Filters.lt("claimedAt", Date.from(claimedBefore))),
+            Updates.combine(
+                Updates.set("status", "active"),
+                Updates.unset("claimedBy"),
+                Updates.unset("claimToken"),
+                Updates.unset("claimedAt")
+            )
+        ).getModifiedCount();
+    }
+
+    // Отправленным напоминаниям шард не нужен, поэтому выборка ограничена неотправленными и идёт по индексу статуса
+    @Override
+    public long backfillShards(int shardCount) {
+        Bson filter = Filters.and(Filters.in("status", "active", "sending"), Filters.exists("shard", false));
+        long updated = 0;
+        while (true) {
+            List<Document> batch = new ArrayList<>(BACKFILL_BATCH_SIZE);
+            reminders.find(filter)
+                    .projection(Projections.include("userId"))
+                    .limit(BACKFILL_BATCH_SIZE)
+                    .into(batch);
+            if (batch.isEmpty()) {
+                return updated;
+            }
+            List<WriteModel<Document>> updates = new ArrayList<>(batch.size());
+            for (Document reminder : batch) {
+                String userId = reminder.getString("userId");
+                updates.add(new UpdateOneModel<>(Filters.eq("_id", reminder.getObjectId("_id")),
+                        Updates.set("shard", ReminderShards.of(userId != null ? userId : "", shardCount))));
+            }
+            reminders.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+            updated += updates.size();
+        }
+    }
+
+    // Страница по ключу (remindAt, _id) без skip
+    @Override
+    public List<ScheduledReminder> findPage(String userId, Instant cursorRemindAt, ObjectId cursorId, boolean forward, int limit) {
+        Bson filter = Filters.and(Filters.eq("userId", userId), Filters.type("remindAt", BsonType.DATE_TIME));
+        if (cursorId != null) {
+            Date cursorDate = Date.from(cursorRemindAt);
+            Bson range = forward
+                    ? Filters.or(Filters.gt("remindAt", cursorDate),
+                            Filters.and(Filters.eq("remindAt", cursorDate), Filters.gt("_id", cursorId)))
+                    : Filters.or(Filters.lt("remindAt", cursorDate),
+                            Filters.and(Filters.eq("remindAt", cursorDate), Filters.lt("_id", cursorId)));
+            filter = Filters.and(filter, range);
+        }
+        Bson sort = forward
+                ? Sorts.ascending("remindAt", "_id")
+                : Sorts.descending("remindAt", "_id");
+
+        List<ScheduledReminder> page = new ArrayList<>(limit);
+        reminders.find(filter)
+                .projection(Projections.include("userId", "title", "text", "remindAt", "recurrence", "timezone", "flexibleTime"))
+                .sort(sort)
+                .limit(limit)
+                .forEach(reminder -> page.add(DocumentMapper.toScheduledReminder(reminder)));
+        return page;
+    }
+
+    public ReminderWriteBatcher getWriter() {
+        return writer;
+    }
+
+    @Override
+    public void close() {
+        writer.close();
+    }
+}
@@ -0,0 +1,121 @@
+package project.database;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import project.model.User;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/*
+Чтение, регистрация и смена города идут через реактивный драйвер, синхронные варианты
+этих операций просто ждут результата. Остальное - через синхронный клиент.
+ */
+public class MongoUserRepository implements UserRepository {
+    private final MongoCollection<Document> users;
+    private final com.mongodb.reactivestreams.client.MongoCollection<Document> reactiveUsers;
+
+    public MongoUserRepository(MongoCollection<Document> users,
+                               com.mongodb.reactivestreams.client.MongoCollection<Document> reactiveUsers) {
+        this.users = users;
+        this.reactiveUsers = reactiveUsers;
+    }
+
+    @Override
+    public User findById(long userId) {
+        return findByIdAsync(userId).toCompletableFuture().join();
+    }
+
+    @Override
+    public CompletionStage<User> findByIdAsync(long userId) {
+        return Publishers.first(reactiveUsers.find(Filters.eq("_id", userId)).first())
+                .thenApply(userDoc -> userDoc == null ? null : DocumentMapper.toUser(userDoc));
+    }
+
+    @Override
+    public void insert(User user) {
+        users.insertOne(DocumentMapper.userDocument(user));
+    }
+
+    @Override
+    public User insertIfAbsent(User user) {
+        return insertIfAbsentAsync(user).toCompletableFuture().join();
+    }
+
+    // Один upsert вместо поиска и вставки
+    @Override
+    public CompletionStage<User> insertIfAbsentAsync(User user) {
+        Document fields = DocumentMapper.userDocument(user);
+        fields.remove("_id");
+        return Publishers.first(reactiveUsers.findOneAndUpdate(
+                        Filters.eq("_id", user.getId()),
+                        new Document("$setOnInsert", fields),
+                        new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.BEFORE)))
+                .thenApply(previous -> previous == null ? null : DocumentMapper.toUser(previous));
+    }
+
+    @Override
+    public void updateProfile(User user) {
+        users.updateOne(
+            Filters.eq("_id", user.getId()),
+            Updates.combine(
+                Updates.set("username", user.getUsername()),
+                Updates.set("firstName", user.getFirstName()),
+                Updates.set("timezone", user.getTimeZone().getId()),
+                Updates.set("isAdmin", user.isAdmin()),
+                Updates.set("isBanned", user.isBanned())
+            )
+        );
+    }
+
+    @Override
+    public void updateBanned(long userId, boolean banned) {
+        users.updateOne(Filters.eq("_id", userId), Updates.set("isBanned", banned));
+    }
+
+    // Частичный индекс isBanned_true содержит только заблокированных, читаются одни _id
+    @Override
+    public long[] findBannedIds() {
+        List<Long> ids = new ArrayList<>();
+        users.find(Filters.eq("isBanned", true))
+                .projection(Projections.include("_id"))
+                .forEach(userDoc -> ids.add(userDoc.getLong("_id")));
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    @Override
+    public void updateCity(long userId, String city, ZoneId timeZone) {
+        updateCityAsync(userId, city, timeZone).toCompletableFuture().join();
+    }
+
+    @Override
+    public CompletionStage<Void> updateCityAsync(long userId, String city, ZoneId timeZone) {
+        return Publishers.first(reactiveUsers.updateOne(
+            Filters.eq("_id", userId),
+            Updates.combine(
+                Updates.set("city", city),
+                Updates.set("timezone", timeZone.getId()),
+                Updates.set("hasSetCity", true)
+            )
+        )).thenApply(result -> null);
+    }
+
+    @Override
+    public List<User> findAll() {
+        List<User> all = new ArrayList<>();
+        users.find().forEach(userDoc -> all.add(DocumentMapper.toUser(userDoc)));
+        return all;
+    }
+
+    // Подключение общее для обоих репозиториев и закрывается в DatabaseManager
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,155 @@
+package project.database;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+Переводит старые напоминания со строковыми датами "dd/MM/yy HH:mm" (локальное время владельца)
+в BSON-даты в UTC. Работает пачками и сохраняет последний обработанный _id в коллекции migrations,
+поэтому прерванный запуск продолжается с того же места.
+
+Запуск: java -cp bot.jar project.database.ReminderMigration [batchSize]
+ */
+public class ReminderMigration {
+    private static final String MIGRATION_ID = "reminders-remindAt-utc";
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final DateTimeFormatter LEGACY_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yy HH:mm");
+    private static final ZoneId DEFAULT_ZONE = ZoneId.of("UTC");
+
+    private final MongoCollection<Document> users;
+    private final MongoCollection<Document> reminders;
+    private final MongoCollection<Document> migrations;
+    private final int batchSize;
+
+    public ReminderMigration(MongoClientConnection connection, int batchSize) {
+        this.users = connection.getUsers();
+        this.reminders = connection.getReminders();
+        this.migrations = connection.getDatabase().getCollection("migrations");
+        this.batchSize = batchSize;
+    }
+
+    public static void main(String[] args) {
+        int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BATCH_SIZE;
+        MongoClientConnection connection = MongoClientConnection.getInstance();
+        try {
+            new ReminderMigration(connection, batchSize).run();
+        } finally {
+            connection.close();
+        }
+    }
+
+    public void run() {
+        Document checkpoint = migrations.find(Filters.eq("_id", MIGRATION_ID)).first();
+        ObjectId lastId = checkpoint != null ? checkpoint.getObjectId("lastId") : null;
+        long migrated = checkpoint != null ? checkpoint.getLong("migrated") : 0;
+        long failed = checkpoint != null ? checkpoint.getLong("failed") : 0;
+        if (lastId != null) {
+            System.out.println("Resuming reminder migration after _id " + lastId);
+        }
+
+        while (true) {
+            Bson legacy = Filters.or(
+                    Filters.type("remindAt", BsonType.STRING),
+                    Filters.type("createdAt", BsonType.STRING));
+            Bson filter = lastId == null ? legacy : Filters.and(Filters.gt("_id", lastId), legacy);
+
+            List<Document> batch = new ArrayList<>(batchSize);
+            reminders.find(filter)
+                    .projection(Projections.include("userId", "remindAt", "createdAt"))
+                    .sort(Sorts.ascending("_id"))
+                    .limit(batchSize)
+                    .into(batch);
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            Map<String, ZoneId> ownerZones = loadOwnerZones(batch);
+            List<WriteModel<Document>> updates = new ArrayList<>(batch.size());
+            for (Document reminder : batch) {
+                ZoneId zone = ownerZones.getOrDefault(reminder.getString("userId"), DEFAULT_ZONE);
+                try {
+                    List<Bson> sets = new ArrayList<>(2);
+                    if (reminder.get("remindAt") instanceof String remindAt) {
+                        sets.add(Updates.set("remindAt", toDate(remindAt, zone)));
+                    }
+                    if (reminder.get("createdAt") instanceof String createdAt) {
+                        sets.add(Updates.set("createdAt", toDate(createdAt, zone)));
+                    }
+                    updates.add(new UpdateOneModel<>(Filters.eq("_id", reminder.getObjectId("_id")), Updates.combine(sets)));
+                } catch (DateTimeParseException e) {
+                    // Такой документ пропускаем: чекпоинт уйдёт дальше, повторно он не обработается
+                    System.err.println("Cannot migrate reminder " + reminder.getObjectId("_id") + ": " + e.getMessage());
+                    failed++;
+                }
+            }
+
+            if (!updates.isEmpty()) {
+                reminders.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+                migrated += updates.size();
+            }
+            lastId = batch.get(batch.size() - 1).getObjectId("_id");
+            saveCheckpoint(lastId, migrated, failed);
+            System.out.println("Migrated " + migrated + " reminders (failed: " + failed + ")");
+        }
+
+        System.out.println("✅ Reminder migration finished: " + migrated + " migrated, " + failed + " failed");
+    }
+
+    private Map<String, ZoneId> loadOwnerZones(List<Document> batch) {
+        Set<Long> ownerIds = new HashSet<>();
+        for (Document reminder : batch) {
+            try {
+                ownerIds.add(Long.parseLong(reminder.getString("userId")));
+            } catch (NumberFormatException e) {
+                // Битый userId: для такого напоминания возьмём UTC
+            }
+        }
+
+        Map<String, ZoneId> ownerZones = new HashMap<>();
+        users.find(Filters.in("_id", ownerIds))
+                .projection(Projections.include("timezone"))
+                .forEach(user -> {
+                    String timezone = user.getString("timezone");
+                    if (timezone != null) {
+                        ownerZones.put(String.valueOf(user.getLong("_id")), ZoneId.of(timezone));
+                    }
+                });
+        return ownerZones;
+    }
+
+    private static Date toDate(String legacyDate, ZoneId zone) {
+        return Date.from(LocalDateTime.parse(legacyDate, LEGACY_FORMATTER).atZone(zone).toInstant());
+    }
+
+    private void saveCheckpoint(ObjectId lastId, long migrated, long failed) {
+        Document checkpoint = new Document("_id", MIGRATION_ID)
+                .append("lastId", lastId)
+                .append("migrated", migrated)
+                .append("failed", failed)
+                .append("updatedAt", new Date());
+        migrations.replaceOne(Filters.eq("_id", MIGRATION_ID), checkpoint, new ReplaceOptions().upsert(true));
+    }
+}
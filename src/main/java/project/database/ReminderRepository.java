@@ -0,0 +1,56 @@
+package project.database;
+
+import org.bson.types.ObjectId;
+import project.model.ScheduledReminder;
+import project.util.RecurrenceRule;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/*
+Хранилище напоминаний. Реализации: MongoReminderRepository (коллекция reminders)
+и EmbeddedReminderRepository (локальный журнал в отображаемом в память файле).
+Статусы: active -> sending (захвачено экземпляром для отправки) -> sent.
+Повторяющееся напоминание после отправки возвращается в active со следующим remindAt.
+ */
+public interface ReminderRepository {
+
+    // Future завершается, когда напоминание надёжно записано; recurrence и timeZone - null для разового
+    CompletableFuture<ObjectId> insert(String userId, int shard, String title, String text, Instant createdAt, Instant remindAt,
+                                       RecurrenceRule recurrence, ZoneId timeZone, boolean flexibleTime);
+
+    // Активные напоминания указанных шардов со сроком раньше until, по возрастанию remindAt
+    List<ScheduledReminder> findActiveBefore(Instant until, Set<Integer> shards);
+
+    // Число активных напоминаний шардов со сроком в [from, until), без загрузки самих документов
+    long countActiveBetween(Instant from, Instant until, Set<Integer> shards);
+
+    /**
+     * Атомарно переводит активные напоминания в статус sending от имени owner.
+     * Возвращает те id, которые захватил именно этот вызов: уже захваченные или отправленные пропускаются.
+     */
+    List<ObjectId> claim(List<ObjectId> reminderIds, String owner);
+
+    void markSent(List<ObjectId> reminderIds);
+
+    // Отправленные повторяющиеся напоминания: sending -> active с новым remindAt
+    void reschedule(Map<ObjectId, Instant> nextRemindAt);
+
+    // Возвращает в active напоминания шардов, захваченные раньше claimedBefore и так и не отправленные
+    long releaseStaleClaims(Set<Integer> shards, Instant claimedBefore);
+
+    // Проставляет shard неотправленным напоминаниям, созданным до разбиения на шарды
+    long backfillShards(int shardCount);
+
+    /**
+     * До limit напоминаний пользователя строго после курсора (remindAt, _id) при forward
+     * или строго перед ним в обратном порядке. Без курсора - с начала списка.
+     */
+    List<ScheduledReminder> findPage(String userId, Instant cursorRemindAt, ObjectId cursorId, boolean forward, int limit);
+
+    void close();
+}
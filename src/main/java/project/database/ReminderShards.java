@@ -0,0 +1,16 @@
+package project.database;
+
+/*
+Разбиение напоминаний на шарды по владельцу. String.hashCode задан спецификацией и одинаков
+во всех JVM, поэтому все экземпляры бота сходятся в том, какому шарду принадлежит напоминание.
+Число шардов должно совпадать на всех экземплярах.
+ */
+public final class ReminderShards {
+
+    private ReminderShards() {
+    }
+
+    public static int of(String userId, int shardCount) {
+        return Math.floorMod(userId.hashCode(), shardCount);
+    }
+}
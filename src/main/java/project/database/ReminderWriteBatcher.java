@@ -0,0 +1,216 @@
+package project.database;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Групповая запись напоминаний: вставки копятся не дольше maxDelay или до maxBatchSize документов
+и уходят в базу одним неупорядоченным bulkWrite. Future каждого вызывающего завершается,
+когда база подтвердила его пачку.
+ */
+public class ReminderWriteBatcher {
+    // Гистограмма размеров пачек по степеням двойки: 1, 2-3, 4-7, ... 512+
+    private static final int SIZE_BUCKETS = 11;
+
+    private final MongoCollection<Document> reminders;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final LinkedBlockingQueue<PendingInsert> queue;
+    private final Thread flusher;
+    private volatile boolean running;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder documentCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder flushNanosTotal = new LongAdder();
+    private final AtomicLong flushNanosMax = new AtomicLong();
+    private final AtomicLongArray batchSizeHistogram = new AtomicLongArray(SIZE_BUCKETS);
+
+    public ReminderWriteBatcher(MongoCollection<Document> reminders, int maxBatchSize, long maxDelay, TimeUnit unit) {
+        this.reminders = reminders;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.queue = new LinkedBlockingQueue<>();
+        this.running = true;
+        this.flusher = new Thread(this::run, "reminder-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public CompletableFuture<ObjectId> insert(Document reminderDoc) {
+        PendingInsert pending = new PendingInsert(reminderDoc);
+        if (!running) {
+            pending.future.completeExceptionally(new IllegalStateException("Reminder writer is closed"));
+            return pending.future;
+        }
+        queue.add(pending);
+        // close() мог пройти между проверкой и добавлением, и поток записи уже вышел: забираем вставку обратно
+        if (!running && queue.remove(pending)) {
+            pending.future.completeExceptionally(new IllegalStateException("Reminder writer is closed"));
+        }
+        return pending.future;
+    }
+
+    private void run() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingInsert first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingInsert next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingInsert> batch) {
+        List<WriteModel<Document>> inserts = new ArrayList<>(batch.size());
+        for (PendingInsert pending : batch) {
+            inserts.add(new InsertOneModel<>(pending.document));
+        }
+
+        long start = System.nanoTime();
+        try {
+            reminders.bulkWrite(inserts, new BulkWriteOptions().ordered(false));
+            for (PendingInsert pending : batch) {
+                pending.complete();
+            }
+        } catch (MongoBulkWriteException e) {
+            // При неупорядоченной записи остальные документы пачки всё равно вставлены
+            boolean[] failed = new boolean[batch.size()];
+            for (BulkWriteError error : e.getWriteErrors()) {
+                failed[error.getIndex()] = true;
+                batch.get(error.getIndex()).future.completeExceptionally(
+                        new IllegalStateException("Failed to save reminder: " + error.getMessage()));
+                failedCount.increment();
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                if (!failed[i]) {
+                    batch.get(i).complete();
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error writing reminder batch of " + batch.size() + ": " + e.getMessage());
+            for (PendingInsert pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            failedCount.add(batch.size());
+        }
+        recordBatch(batch.size(), System.nanoTime() - start);
+    }
+
+    private void recordBatch(int size, long flushNanos) {
+        batchCount.increment();
+        documentCount.add(size);
+        flushNanosTotal.add(flushNanos);
+        flushNanosMax.accumulateAndGet(flushNanos, Math::max);
+        int bucket = Math.min(SIZE_BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(size));
+        batchSizeHistogram.incrementAndGet(bucket);
+    }
+
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public long getDocumentCount() {
+        return documentCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    public double getAverageBatchSize() {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0 : (double) documentCount.sum() / batches;
+    }
+
+    public double getAverageFlushMillis() {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0 : flushNanosTotal.sum() / 1_000_000.0 / batches;
+    }
+
+    public double getMaxFlushMillis() {
+        return flushNanosMax.get() / 1_000_000.0;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Число пачек по размерам: индекс i соответствует пачкам размером от 2^i до 2^(i+1)-1.
+     */
+    public long[] getBatchSizeHistogram() {
+        long[] histogram = new long[SIZE_BUCKETS];
+        for (int i = 0; i < SIZE_BUCKETS; i++) {
+            histogram[i] = batchSizeHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    public String describeStats() {
+        return String.format("batches=%d, documents=%d, failed=%d, avgBatch=%.1f, avgFlush=%.2fms, maxFlush=%.2fms, queued=%d",
+                getBatchCount(), getDocumentCount(), getFailedCount(), getAverageBatchSize(),
+                getAverageFlushMillis(), getMaxFlushMillis(), getQueueDepth());
+    }
+
+    // Дописывает всё, что уже в очереди, и останавливает поток записи
+    public void close() {
+        running = false;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Reminder writer stopped: " + describeStats());
+    }
+
+    private static final class PendingInsert {
+        private final Document document;
+        private final CompletableFuture<ObjectId> future = new CompletableFuture<>();
+
+        private PendingInsert(Document document) {
+            this.document = document;
+        }
+
+        private void complete() {
+            future.complete(document.getObjectId("_id"));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package project.database;
+
+import project.model.User;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Кэш пользователей перед коллекцией users.
+Ограничен по размеру (вытесняется давно не использованный) и по времени жизни записи.
+ */
+public class UserCache {
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<Long, Entry> entries;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public UserCache(int maxSize, long ttl, TimeUnit unit) {
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > UserCache.this.maxSize;
+            }
+        };
+    }
+
+    public User get(long userId) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(userId);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.loadedAtNanos > ttlNanos) {
+                entries.remove(userId);
+                return null;
+            }
+            return entry.user;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(User user) {
+        lock.lock();
+        try {
+            entries.put(user.getId(), new Entry(user, System.nanoTime()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(long userId) {
+        lock.lock();
+        try {
+            entries.remove(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        private final User user;
+        private final long loadedAtNanos;
+
+        private Entry(User user, long loadedAtNanos) {
+            this.user = user;
+            this.loadedAtNanos = loadedAtNanos;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package project.database;
+
+import project.model.User;
+
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/*
+Хранилище пользователей. Реализации: MongoUserRepository (коллекция users)
+и EmbeddedUserRepository (локальный журнал в отображаемом в память файле).
+ */
+public interface UserRepository {
+
+    // null, если пользователя нет
+    User findById(long userId);
+
+    void insert(User user);
+
+    /**
+     * Добавляет пользователя, если его ещё нет.
+     * Возвращает уже существующего пользователя или null, если пользователь только что создан.
+     */
+    User insertIfAbsent(User user);
+
+    // Имя, часовой пояс и флаги администратора и блокировки
+    void updateProfile(User user);
+
+    void updateCity(long userId, String city, ZoneId timeZone);
+
+    void updateBanned(long userId, boolean banned);
+
+    List<User> findAll();
+
+    // Идентификаторы заблокированных пользователей, без загрузки профилей
+    long[] findBannedIds();
+
+    // Неблокирующие варианты для обработки сообщений: поток не ждёт ответа базы
+    CompletionStage<User> findByIdAsync(long userId);
+
+    CompletionStage<User> insertIfAbsentAsync(User user);
+
+    CompletionStage<Void> updateCityAsync(long userId, String city, ZoneId timeZone);
+
+    void close();
+}
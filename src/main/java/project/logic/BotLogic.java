@@ -2,106 +2,374 @@ package project.logic;
 
 import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
 import org.telegram.telegrambots.longpolling.util.LongPollingSingleThreadUpdateConsumer;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 import project.LogStatus;
+import project.config.ConfigLoader;
+import project.database.ReminderWriteBatcher;
+import project.metrics.Counter;
+import project.metrics.LatencyHistogram;
+import project.metrics.MetricsRegistry;
+import project.metrics.MetricsServer;
 import project.model.User;
 import project.database.DatabaseManager;
+import project.service.DeliveryPlanner;
 import project.service.MessageHandler;
+import project.service.MessageSendPipeline;
+import project.service.MessageTemplates;
+import project.service.ReminderDispatcher;
+import project.service.ReminderListService;
 import project.service.ReminderService;
+import project.service.ShardLeaseManager;
+import project.service.TelegramRawTransport;
 import project.service.UserSessionService;
-import project.service.ConsoleLoggingService;
+import project.service.AsyncLoggingService;
+import project.util.CityMatch;
+import project.util.SlidingWindowLimiter;
 import project.util.TimeZoneFinder;
 
 import java.time.ZoneId;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class BotLogic implements LongPollingSingleThreadUpdateConsumer {
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
     private final TelegramClient telegramClient;
+    private final MessageSendPipeline sendPipeline;
     private final MessageHandler messageHandler;
     private final DatabaseManager databaseManager;
     private final ReminderService reminderService;
-    private final ExecutorService executorService;
-    private final ConsoleLoggingService loggingService;
+    private final ReminderDispatcher reminderDispatcher;
+    private final UserSessionService sessionService;
+    private final ExecutorService updateExecutor;
+    private final ChatMailboxExecutor mailboxExecutor;
+    private final AsyncLoggingService loggingService;
+    private final MetricsServer metricsServer;
+    private final LatencyHistogram updateTimer;
+    private final Counter messageUpdates;
+    private final Counter callbackUpdates;
+    // Допуск обновлений: общее число обрабатываемых и частота от одного пользователя
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final SlidingWindowLimiter userLimiter;
+    private final Counter rateLimitedUpdates;
+    private final Counter overloadedUpdates;
+    private final Counter bannedUpdates;
 
     public BotLogic(String botToken) {
-        this.telegramClient = new OkHttpTelegramClient(botToken);
-        this.databaseManager = DatabaseManager.getInstance();
-        this.messageHandler = new MessageHandler(telegramClient);
-        this.loggingService = new ConsoleLoggingService();
-        this.reminderService = new ReminderService(databaseManager, messageHandler, UserSessionService.getInstance(), loggingService);
-        this.executorService = Executors.newVirtualThreadPerTaskExecutor();
+        this(new OkHttpTelegramClient(botToken), new TelegramRawTransport(botToken), DatabaseManager.getInstance());
+    }
+
+    // Клиент и хранилище передаются снаружи, чтобы нагрузочный тест мог подставить свои
+    public BotLogic(TelegramClient telegramClient, DatabaseManager databaseManager) {
+        this(telegramClient, null, databaseManager);
+    }
+
+    // rawTransport - прямая отправка шаблонных ответов; null - всё через telegramClient
+    public BotLogic(TelegramClient telegramClient, TelegramRawTransport rawTransport, DatabaseManager databaseManager) {
+        this.telegramClient = telegramClient;
+        this.databaseManager = databaseManager;
+        ConfigLoader config = ConfigLoader.getInstance();
+        this.sendPipeline = new MessageSendPipeline(telegramClient, rawTransport,
+                config.getTelegramGlobalSendRate(),
+                config.getTelegramChatSendRate(),
+                config.getTelegramSendThreads(),
+                config.getTelegramSendQueueCapacity());
+        this.messageHandler = new MessageHandler(sendPipeline);
+        this.loggingService = AsyncLoggingService.getInstance();
+        ShardLeaseManager shardLeases = new ShardLeaseManager(databaseManager, config.getInstanceId(),
+                config.getReminderLeaseTtlMillis(), config.getReminderLeaseRenewMillis());
+        DeliveryPlanner deliveryPlanner = new DeliveryPlanner(config.getTelegramGlobalSendRate(),
+                config.getReminderEarlyReleaseMillis());
+        this.reminderDispatcher = new ReminderDispatcher(databaseManager, messageHandler, shardLeases,
+                deliveryPlanner, config.getReminderPollIntervalMillis());
+        ReminderListService reminderListService = new ReminderListService(databaseManager, messageHandler, config.getReminderPageSize());
+        this.sessionService = UserSessionService.getInstance();
+        this.reminderService = new ReminderService(databaseManager, messageHandler, sessionService,
+                loggingService, reminderDispatcher, reminderListService);
+        this.updateExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.mailboxExecutor = new ChatMailboxExecutor(updateExecutor);
+        this.maxInFlight = config.getMaxInFlightUpdates();
+        this.inFlight = new Semaphore(maxInFlight);
+        this.userLimiter = new SlidingWindowLimiter(config.getUserUpdateLimit(), config.getUserUpdateWindowMillis());
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        this.updateTimer = metrics.histogram("bot_update_processing_seconds",
+                "Time from receiving an update to the end of its handling, including the wait in the chat mailbox");
+        this.messageUpdates = metrics.counter("bot_updates_total", "Received updates", "type", "message");
+        this.callbackUpdates = metrics.counter("bot_updates_total", "Received updates", "type", "callback_query");
+        this.rateLimitedUpdates = metrics.counter("bot_updates_shed_total", "Updates rejected before processing",
+                "reason", "user_rate");
+        this.overloadedUpdates = metrics.counter("bot_updates_shed_total", "Updates rejected before processing",
+                "reason", "overload");
+        this.bannedUpdates = metrics.counter("bot_updates_shed_total", "Updates rejected before processing",
+                "reason", "banned");
+        registerGauges(metrics);
+        this.metricsServer = MetricsServer.start(metrics, config.getMetricsHost(), config.getMetricsPort());
+    }
+
+    /**
+     * Запускает доставку напоминаний и слежение за изменениями в базе. Future завершается после загрузки
+     * ближайших напоминаний, обновления можно принимать и раньше.
+     */
+    public CompletableFuture<Void> start() {
+        databaseManager.watchChanges(reminderDispatcher);
+        return reminderDispatcher.start();
+    }
+
+    private void registerGauges(MetricsRegistry metrics) {
+        metrics.gauge("bot_send_queue_depth", "Requests waiting in the Telegram send pipeline", sendPipeline::getPendingCount);
+        metrics.gauge("bot_send_chat_lanes", "Chats with an active send lane", sendPipeline::getLaneCount);
+        metrics.gauge("bot_chat_mailboxes", "Chats with updates being processed or queued", mailboxExecutor::getActiveMailboxCount);
+        metrics.gauge("bot_updates_in_flight", "Admitted updates being processed or queued", () -> maxInFlight - inFlight.availablePermits());
+        metrics.gauge("bot_rate_limited_users", "Users tracked by the per-user update limiter", userLimiter::size);
+        metrics.gauge("bot_banned_users", "Banned users known to this instance", databaseManager::getBannedUserCount);
+        metrics.gauge("bot_user_sessions", "Stored user dialogue sessions", sessionService::getSessionCount);
+        metrics.gauge("bot_user_cache_size", "Users in the in-memory cache", databaseManager::getUserCacheSize);
+        metrics.gauge("bot_scheduled_reminders", "Reminders waiting in the timing wheel", reminderDispatcher::getPendingCount);
+        metrics.gauge("bot_reminder_shards_owned", "Reminder shards leased by this instance", reminderDispatcher::getOwnedShardCount);
+        metrics.gauge("bot_reminders_staged", "Default-time reminders held by the delivery planner", reminderDispatcher::getStagedCount);
+        metrics.functionCounter("bot_reminders_released_early_total", "Reminders delivered ahead of a burst",
+                reminderDispatcher::getReleasedEarlyCount);
+
+        ReminderWriteBatcher writer = databaseManager.getReminderWriter();
+        if (writer != null) {
+            metrics.gauge("bot_reminder_writer_queue_depth", "Reminder inserts waiting for the next bulk write", writer::getQueueDepth);
+            metrics.functionCounter("bot_reminder_writer_batches_total", "Bulk writes executed by the reminder writer", writer::getBatchCount);
+            metrics.functionCounter("bot_reminder_writer_documents_total", "Reminders written by the reminder writer", writer::getDocumentCount);
+            metrics.functionCounter("bot_reminder_writer_failed_total", "Reminder inserts that failed", writer::getFailedCount);
+            metrics.gauge("bot_reminder_writer_avg_batch_size", "Average bulk write size", writer::getAverageBatchSize);
+        }
+
+        metrics.gauge("bot_log_queue_depth", "Log events waiting to be written", loggingService::getQueueDepth);
+        metrics.functionCounter("bot_log_dropped_total", "Log events dropped because the buffer was full", loggingService::getDroppedCount);
+    }
+
+    public TelegramClient getTelegramClient() {
+        return telegramClient;
     }
 
     @Override
     public void consume(Update update) {
+        long receivedNanos = System.nanoTime();
         if (update.hasMessage() && update.getMessage().hasText()) {
-            executorService.submit(() -> processMessage(update));
+            messageUpdates.increment();
+            Message message = update.getMessage();
+            if (admit(message.getFrom().getId(), message.getChatId())) {
+                submit(message.getChatId(), () -> handleUpdate(receivedNanos, () -> processMessage(update, receivedNanos)));
+            }
+        } else if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            callbackUpdates.increment();
+            long chatId = update.getCallbackQuery().getMessage().getChatId();
+            if (admit(update.getCallbackQuery().getFrom().getId(), chatId)) {
+                submit(chatId, () -> handleUpdate(receivedNanos, () -> processCallback(update, receivedNanos)));
+            }
         }
     }
 
-    private void processMessage(Update update) {
+    // Пул останавливается: обновление не будет обработано, поэтому его место освобождаем сразу
+    private void submit(long chatId, Supplier<CompletionStage<?>> task) {
+        if (!mailboxExecutor.submitAsync(chatId, task)) {
+            inFlight.release();
+        }
+    }
 
-        User user = databaseManager.getUser(update.getMessage().getFrom().getId());
+    /**
+     * Решает до обращения к базе, принимать ли обновление. Заблокированные отсекаются по множеству в памяти,
+     * ответ им уходит не чаще раза за окно лимитера. Флудящий пользователь упирается в свой лимит
+     * и не занимает общие места; при исчерпании общих мест обновление отклоняется сразу, а не ждёт в очереди.
+     * На отклонённые отвечаем готовым шаблоном, не чаще раза за окно лимитера на пользователя.
+     */
+    private boolean admit(long userId, long chatId) {
+        long now = System.currentTimeMillis();
+        if (databaseManager.isUserBanned(userId)) {
+            bannedUpdates.increment();
+            if (userLimiter.tryNotify(userId, now)) {
+                messageHandler.sendTemplate(String.valueOf(chatId), MessageTemplates.BANNED);
+            }
+            return false;
+        }
+        if (!userLimiter.tryAcquire(userId, now)) {
+            rateLimitedUpdates.increment();
+            if (userLimiter.tryNotify(userId, now)) {
+                messageHandler.sendTemplate(String.valueOf(chatId), MessageTemplates.TOO_MANY_UPDATES);
+            }
+            return false;
+        }
+        if (!inFlight.tryAcquire()) {
+            overloadedUpdates.increment();
+            if (userLimiter.tryNotify(userId, now)) {
+                messageHandler.sendTemplate(String.valueOf(chatId), MessageTemplates.OVERLOADED);
+            }
+            return false;
+        }
+        return true;
+    }
 
+    // Если обработчик вернул незавершённый этап, время обработки учитывается и место освобождается по его завершении
+    private CompletionStage<Void> handleUpdate(long receivedNanos, Supplier<CompletionStage<Void>> handler) {
+        messageHandler.beginUpdate(receivedNanos);
+        CompletionStage<Void> pending = null;
         try {
-            // Новый пользователь
-            if (!databaseManager.isUserExist(update)) {
-                user = new User(update);
-                databaseManager.addUser(user);
-                loggingService.log(user, "New user registered", LogStatus.INFO);
-                messageHandler.sendTextMessage(user, "Добро пожаловать, " + user.getFirstName() + "! Это бот для напоминаний.\n \n" +
-                        "Пожалуйста, укажите ваш город для установки правильного часового пояса.");
-                return;
+            pending = handler.get();
+        } finally {
+            messageHandler.endUpdate();
+            if (pending == null) {
+                updateTimer.recordSince(receivedNanos);
+                inFlight.release();
             }
+        }
+        return pending == null ? null : pending.whenComplete((result, error) -> {
+            updateTimer.recordSince(receivedNanos);
+            inFlight.release();
+        });
+    }
 
-            String messageText = update.getMessage().getText();
-            loggingService.log(user, "Received message: " + messageText, LogStatus.INFO);
+    /**
+     * Продолжает обработку обновления после обращения к базе. Готовый результат обрабатывается сразу,
+     * иначе продолжение выполняется в пуле обработчиков, а не в потоке драйвера.
+     */
+    private <T> CompletionStage<Void> continueUpdate(CompletionStage<T> stage, long receivedNanos,
+                                                     Function<T, CompletionStage<Void>> next) {
+        CompletableFuture<T> future = stage.toCompletableFuture();
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            return next.apply(future.join());
+        }
+        return stage.thenComposeAsync(value -> {
+            messageHandler.beginUpdate(receivedNanos);
+            try {
+                CompletionStage<Void> result = next.apply(value);
+                return result != null ? result : CompletableFuture.completedFuture(null);
+            } finally {
+                messageHandler.endUpdate();
+            }
+        }, updateExecutor);
+    }
 
-            // установка города
-            if (!user.hasSetCity()) {
-                handleCityInput(user, messageText);
-                return;
+    private CompletionStage<Void> processCallback(Update update, long receivedNanos) {
+        CallbackQuery callbackQuery = update.getCallbackQuery();
+        return continueUpdate(databaseManager.getUserAsync(callbackQuery.getFrom().getId()), receivedNanos, user -> {
+            if (user == null) {
+                return null;
+            }
+            try {
+                reminderService.handleCallback(user, callbackQuery);
+            } catch (Exception e) {
+                loggingService.log(user, "Error processing callback: " + e.getMessage(), LogStatus.ERROR);
             }
+            return null;
+        });
+    }
+
+    private CompletionStage<Void> processMessage(Update update, long receivedNanos) {
+
+        // В установившемся режиме пользователь берётся из кэша без обращения к базе
+        User cached = databaseManager.getCachedUser(update.getMessage().getFrom().getId());
 
-            if (messageText.equals("/start")) {
-                messageHandler.sendStartKeyboard(user);
+        CompletionStage<Void> pending;
+        try {
+            if (cached != null) {
+                pending = handleMessage(cached, update, receivedNanos);
             } else {
-                reminderService.handleCommand(user, messageText);
+                // Upsert не держит поток обработчика: ответ уходит, как только база его подтвердит
+                User candidate = new User(update);
+                pending = continueUpdate(databaseManager.registerUserIfAbsentAsync(candidate), receivedNanos, existing -> {
+                    // Новый пользователь
+                    if (existing == null) {
+                        loggingService.log(candidate, "New user registered", LogStatus.INFO);
+                        messageHandler.sendTextMessage(candidate, "Добро пожаловать, " + candidate.getFirstName() + "! Это бот для напоминаний.\n \n" +
+                                "Пожалуйста, укажите ваш город для установки правильного часового пояса.");
+                        return null;
+                    }
+                    return handleMessage(existing, update, receivedNanos);
+                });
             }
         } catch (Exception e) {
-            loggingService.log(user, "Error processing message: " + e.getMessage(), LogStatus.ERROR);
-            messageHandler.sendTextMessage(user, "Произошла ошибка при обработке сообщения. Пожалуйста, попробуйте еще раз.");
-            messageHandler.sendStartKeyboard(user);
+            reportMessageError(update, cached, e);
+            return null;
         }
+        return pending == null ? null : pending.exceptionally(error -> {
+            reportMessageError(update, cached, error);
+            return null;
+        });
     }
 
+    private CompletionStage<Void> handleMessage(User user, Update update, long receivedNanos) {
+        String messageText = update.getMessage().getText();
+        loggingService.log(user, "Received message: " + messageText, LogStatus.INFO);
 
+        // установка города
+        if (!user.hasSetCity()) {
+            return handleCityInput(user, messageText, receivedNanos);
+        }
 
-    private void handleCityInput(User user, String cityName) {
-        if (TimeZoneFinder.isValidCity(cityName)) {
-            ZoneId timeZone = TimeZoneFinder.findTimeZoneByCity(cityName);
-            if (timeZone != null) {
-                databaseManager.updateUserCity(user, cityName, timeZone);
-                messageHandler.sendTextMessage(user, "Отлично! Ваш город установлен: " + cityName + 
+        if (messageText.equals("/start")) {
+            messageHandler.sendStartKeyboard(user);
+        } else {
+            reminderService.handleCommand(user, messageText);
+        }
+        return null;
+    }
+
+    private void reportMessageError(Update update, User user, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (user == null) {
+            user = new User(update);
+        }
+        loggingService.log(user, "Error processing message: " + cause.getMessage(), LogStatus.ERROR);
+        messageHandler.sendTemplate(user, MessageTemplates.PROCESSING_ERROR);
+        messageHandler.sendStartKeyboard(user);
+    }
+
+    private CompletionStage<Void> handleCityInput(User user, String cityName, long receivedNanos) {
+        // Один поиск по индексу даёт и город, и подсказки на случай промаха
+        CityMatch match = TimeZoneFinder.lookup(cityName);
+        if (match.isFound()) {
+            ZoneId timeZone = match.getTimeZone();
+            return continueUpdate(databaseManager.updateUserCityAsync(user, match.getCityName(), timeZone), receivedNanos, ignored -> {
+                messageHandler.sendTextMessage(user, "Отлично! Ваш город установлен: " + match.getCityName() +
                     "\nЧасовой пояс: " + timeZone.getId() +
                         "\n\nТеперь вы можете создавать напоминания! Используйте команду /start для вызова меню.");
                    // "\n\nТеперь вы можете создавать напоминания! Используйте команду /help для просмотра доступных команд.");
-            } else {
-                String suggestions = TimeZoneFinder.getSuggestedCities(cityName);
-                messageHandler.sendTextMessage(user, suggestions);
-            }
-        } else {
-            String suggestions = TimeZoneFinder.getSuggestedCities(cityName);
-            messageHandler.sendTextMessage(user, suggestions);
+                return null;
+            });
         }
+        messageHandler.sendTextMessage(user, TimeZoneFinder.formatSuggestions(match));
+        return null;
     }
 
     public void close() {
-        executorService.shutdown();
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
+        if (databaseManager != null) {
+            databaseManager.stopWatchingChanges();
+        }
+        reminderDispatcher.close();
+        mailboxExecutor.shutdown();
+        // Снимок сессий и закрытие базы - только после того, как начатые обновления дообработаны
+        try {
+            if (!mailboxExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Updates still in progress after " + SHUTDOWN_TIMEOUT_SECONDS + " s, shutting down anyway");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sessionService.saveSnapshot();
+        sendPipeline.close();
         if (databaseManager != null) {
             databaseManager.closeConnection();
         }
+        loggingService.close();
     }
 }
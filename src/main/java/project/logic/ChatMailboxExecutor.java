@@ -0,0 +1,129 @@
+package project.logic;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+Последовательное выполнение задач одного чата поверх общего пула виртуальных потоков.
+Задачи одного чата идут строго по порядку, разные чаты обрабатываются параллельно.
+Пустой ящик удаляется из карты и не держит поток.
+Задача может вернуть незавершённый CompletionStage (например, запрос к базе): поток тогда
+освобождается, а следующая задача чата запускается после его завершения.
+После остановки пула новые задачи не принимаются, а оставшиеся в ящике отбрасываются.
+ */
+public class ChatMailboxExecutor {
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<Long, Mailbox> mailboxes;
+
+    public ChatMailboxExecutor(ExecutorService executor) {
+        this.executor = executor;
+        this.mailboxes = new ConcurrentHashMap<>();
+    }
+
+    public boolean submit(long chatId, Runnable task) {
+        return submitAsync(chatId, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    // null или уже завершённый этап - задача выполнена синхронно. false - пул остановлен, задача не принята
+    public boolean submitAsync(long chatId, Supplier<CompletionStage<?>> task) {
+        if (executor.isShutdown()) {
+            return false;
+        }
+        boolean[] start = new boolean[1];
+        mailboxes.compute(chatId, (id, existing) -> {
+            // Ящик существует, пока в нём есть задачи, значит новый ящик надо запустить
+            Mailbox target = existing;
+            if (target == null) {
+                target = new Mailbox();
+                start[0] = true;
+            }
+            target.tasks.add(task);
+            return target;
+        });
+        return !start[0] || startDrain(chatId);
+    }
+
+    public int getActiveMailboxCount() {
+        return mailboxes.size();
+    }
+
+    private void drain(long chatId) {
+        Supplier<CompletionStage<?>> task = poll(chatId);
+        while (task != null) {
+            CompletionStage<?> pending = null;
+            try {
+                pending = task.get();
+            } catch (RuntimeException e) {
+                System.err.println("Error processing update for chat " + chatId + ": " + e.getMessage());
+            }
+            if (pending != null && !pending.toCompletableFuture().isDone()) {
+                // Ящик остаётся в карте, пока задача не завершится, поэтому порядок чата сохраняется
+                pending.whenComplete((result, error) -> {
+                    if (error != null) {
+                        System.err.println("Error processing update for chat " + chatId + ": " + error.getMessage());
+                    }
+                    startDrain(chatId);
+                });
+                return;
+            }
+            task = poll(chatId);
+        }
+    }
+
+    // Если пул уже остановлен, ящик удаляется вместе с задачами, иначе он остался бы в карте навсегда
+    private boolean startDrain(long chatId) {
+        try {
+            executor.execute(() -> drain(chatId));
+            return true;
+        } catch (RejectedExecutionException e) {
+            Mailbox dropped = mailboxes.remove(chatId);
+            if (dropped != null) {
+                System.err.println("Dropped " + dropped.tasks.size() + " queued updates for chat " + chatId
+                        + ": executor is shut down");
+            }
+            return false;
+        }
+    }
+
+    // Все изменения ящика идут через compute, поэтому удаление пустого ящика не гонится с submit
+    private Supplier<CompletionStage<?>> poll(long chatId) {
+        @SuppressWarnings("unchecked")
+        Supplier<CompletionStage<?>>[] next = new Supplier[1];
+        mailboxes.computeIfPresent(chatId, (id, existing) -> {
+            next[0] = existing.tasks.poll();
+            return next[0] == null ? null : existing;
+        });
+        return next[0];
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Ждёт после shutdown(), пока начатые задачи закончатся: и выполняемые в пуле, и ожидающие ответа базы.
+     * Ящик удаляется, когда в нём не осталось задач, поэтому ждём и пустую карту, и остановку пула.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!mailboxes.isEmpty()) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private static final class Mailbox {
+        private final ArrayDeque<Supplier<CompletionStage<?>>> tasks = new ArrayDeque<>();
+    }
+}
@@ -1,15 +1,86 @@
 package project.logic;
 
+import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
 import org.telegram.telegrambots.longpolling.TelegramBotsLongPollingApplication;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
 import project.config.ConfigLoader;
+import project.database.DatabaseManager;
+import project.service.MessageTemplates;
+import project.service.TelegramRawTransport;
+import project.service.UserSessionService;
+import project.util.TimeZoneFinder;
+
+import java.util.concurrent.CompletableFuture;
 
 
 public class Main {
     public static void main(String[] args) {
-        String botToken = ConfigLoader.getInstance().getTelegramBotToken();
+        ConfigLoader config = ConfigLoader.getInstance();
+        String botToken = config.getTelegramBotToken();
+        if ("webhook".equalsIgnoreCase(config.getTelegramMode())) {
+            runWebhook(config, botToken);
+        } else {
+            runLongPolling(botToken);
+        }
+    }
+
+    /*
+    Фазы запуска. Для приёма обновлений нужны только клиент Telegram, соединение с хранилищем
+    и сессии; индексы, статистика коллекций, справочник городов и загрузка напоминаний идут параллельно.
+    Напоминания загружаются после того, как старым документам проставлены шарды.
+     */
+    private static CompletableFuture<BotLogic> startBot(StartupOrchestrator startup, String botToken) {
+        CompletableFuture<TelegramClient> telegramClient = startup.phase("telegram client",
+                () -> new OkHttpTelegramClient(botToken));
+        CompletableFuture<DatabaseManager> storage = startup.phase("storage connect", DatabaseManager::getInstance);
+        CompletableFuture<UserSessionService> sessions = startup.phase("session snapshot", UserSessionService::getInstance);
+        startup.phase("city index", TimeZoneFinder::preload);
+        startup.phase("message templates", MessageTemplates::preload);
+        CompletableFuture<Void> indexes = startup.phase("storage indexes", () -> storage.join().ensureIndexes(), storage);
+        CompletableFuture<Void> shards = startup.phase("reminder shard backfill",
+                () -> storage.join().backfillReminderShards(), indexes);
+        startup.phase("storage stats", () -> storage.join().printStorageStats(), storage);
+        startup.phase("banned users", () -> storage.join().loadBannedUsers(), indexes);
+
+        CompletableFuture<BotLogic> bot = startup.phase("bot wiring",
+                () -> new BotLogic(telegramClient.join(), new TelegramRawTransport(botToken), storage.join()),
+                telegramClient, storage, sessions);
+        startup.phase("reminder warm-up", () -> bot.join().start().join(), bot, shards);
+        return bot;
+    }
+
+    private static void runLongPolling(String botToken) {
+        StartupOrchestrator startup = new StartupOrchestrator();
         try (TelegramBotsLongPollingApplication botsApplication = new TelegramBotsLongPollingApplication()) {
-            botsApplication.registerBot(botToken, new BotLogic(botToken));
+            CompletableFuture<BotLogic> bot = startBot(startup, botToken);
+            // Сохраняем сессии и дописываем очереди при остановке процесса
+            bot.thenAccept(ready -> Runtime.getRuntime().addShutdownHook(new Thread(ready::close, "bot-shutdown")));
+            startup.phase("long polling registration", () -> botsApplication.registerBot(botToken, bot.join()), bot).join();
             System.out.println("MyAmazingBot successfully started!");
+            startup.reportWhenDone();
+            Thread.currentThread().join();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void runWebhook(ConfigLoader config, String botToken) {
+        StartupOrchestrator startup = new StartupOrchestrator();
+        try {
+            CompletableFuture<BotLogic> bot = startBot(startup, botToken);
+            CompletableFuture<WebhookServer> server = startup.phase("webhook server", () -> WebhookServer.start(bot.join(),
+                    config.getWebhookHost(),
+                    config.getWebhookPort(),
+                    config.getWebhookPath(),
+                    config.getWebhookSecret()), bot);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.thenAccept(WebhookServer::close);
+                bot.thenAccept(BotLogic::close);
+            }, "bot-shutdown"));
+            startup.phase("webhook registration", () -> WebhookServer.register(bot.join().getTelegramClient(),
+                    config.getWebhookUrl(), config.getWebhookSecret()), server).join();
+            System.out.println("MyAmazingBot successfully started in webhook mode!");
+            startup.reportWhenDone();
             Thread.currentThread().join();
         } catch (Exception e) {
             e.printStackTrace();
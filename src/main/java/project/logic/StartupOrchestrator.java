@@ -0,0 +1,100 @@
+package project.logic;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+Параллельный запуск бота. Каждая фаза выполняется в своём виртуальном потоке, как только готовы
+фазы, от которых она зависит. Главный поток ждёт только то, без чего нельзя принимать обновления,
+остальное (индексы, статистика, прогрев) догоняет в фоне. Время фаз печатается одной сводкой.
+ */
+public class StartupOrchestrator {
+    private final long startNanos = System.nanoTime();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Phase> phases = new CopyOnWriteArrayList<>();
+
+    public <T> CompletableFuture<T> phase(String name, Callable<T> action, CompletableFuture<?>... dependencies) {
+        Phase phase = new Phase(name);
+        phases.add(phase);
+        CompletableFuture<T> result = CompletableFuture.allOf(dependencies).thenApplyAsync(ignored -> {
+            phase.startNanos = System.nanoTime();
+            try {
+                return action.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                phase.endNanos = System.nanoTime();
+            }
+        }, executor);
+        phase.future = result;
+        return result;
+    }
+
+    public CompletableFuture<Void> phase(String name, Step action, CompletableFuture<?>... dependencies) {
+        return phase(name, () -> {
+            action.run();
+            return null;
+        }, dependencies);
+    }
+
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    /**
+     * Печатает сводку, когда завершатся все фазы, в том числе фоновые.
+     */
+    public CompletableFuture<Void> reportWhenDone() {
+        CompletableFuture<?>[] all = phases.stream().map(phase -> phase.future).toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(all)
+                .handle((ignored, error) -> {
+                    printReport();
+                    return null;
+                })
+                .thenRun(executor::shutdown);
+    }
+
+    private void printReport() {
+        StringBuilder report = new StringBuilder("🚀 Startup timing (total ")
+                .append(millis(System.nanoTime() - startNanos)).append(" ms):\n");
+        for (Phase phase : phases) {
+            report.append(String.format(Locale.ROOT, "  %-28s", phase.name));
+            if (phase.startNanos == 0) {
+                report.append(" skipped (dependency failed)\n");
+                continue;
+            }
+            report.append(String.format(Locale.ROOT, " %6d -> %6d ms  %6d ms",
+                    millis(phase.startNanos - startNanos),
+                    millis(phase.endNanos - startNanos),
+                    millis(phase.endNanos - phase.startNanos)));
+            if (phase.future.isCompletedExceptionally()) {
+                Throwable error = phase.future.handle((value, e) -> e).join();
+                report.append("  FAILED: ").append(error.getCause() != null ? error.getCause().getMessage() : error.getMessage());
+            }
+            report.append('\n');
+        }
+        System.out.print(report);
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static final class Phase {
+        private final String name;
+        private volatile long startNanos;
+        private volatile long endNanos;
+        private CompletableFuture<?> future;
+
+        private Phase(String name) {
+            this.name = name;
+        }
+    }
+}
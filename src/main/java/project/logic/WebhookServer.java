@@ -0,0 +1,104 @@
+package project.logic;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+Приём обновлений через webhook вместо long polling.
+Встроенный HTTP-сервер обрабатывает каждый запрос в отдельном виртуальном потоке, проверяет
+заголовок X-Telegram-Bot-Api-Secret-Token и разбирает Update прямо из тела запроса.
+Дальше обновление идёт тем же путём, что и при long polling: BotLogic.consume.
+ */
+public class WebhookServer {
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+    // Неизвестные поля из новых версий Bot API не должны ломать разбор
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final BotLogic bot;
+    private final byte[] secretToken;
+
+    private WebhookServer(HttpServer server, ExecutorService executor, BotLogic bot, String secretToken) {
+        this.server = server;
+        this.executor = executor;
+        this.bot = bot;
+        this.secretToken = secretToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static WebhookServer start(BotLogic bot, String host, int port, String path, String secretToken) throws IOException {
+        if (secretToken == null || secretToken.isBlank()) {
+            throw new IllegalStateException("telegram.webhook.secret must be set in webhook mode");
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        WebhookServer webhook = new WebhookServer(server, executor, bot, secretToken);
+        server.createContext(path, webhook::handle);
+        server.start();
+        System.out.println("Webhook server listening on " + host + ":" + port + path);
+        return webhook;
+    }
+
+    /**
+     * Сообщает Telegram адрес webhook. Если публичный адрес не задан (локальная отладка), регистрация пропускается.
+     */
+    public static void register(TelegramClient telegramClient, String publicUrl, String secretToken) throws TelegramApiException {
+        if (publicUrl == null || publicUrl.isBlank()) {
+            System.out.println("telegram.webhook.url is not set, skipping setWebhook");
+            return;
+        }
+        telegramClient.execute(SetWebhook.builder()
+                .url(publicUrl)
+                .secretToken(secretToken)
+                .build());
+        System.out.println("Webhook registered: " + publicUrl);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String header = exchange.getRequestHeaders().getFirst(SECRET_HEADER);
+            if (header == null || !MessageDigest.isEqual(secretToken, header.getBytes(StandardCharsets.UTF_8))) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+
+            Update update;
+            try (InputStream body = exchange.getRequestBody()) {
+                update = OBJECT_MAPPER.readValue(body, Update.class);
+            } catch (IOException e) {
+                System.err.println("Invalid webhook update: " + e.getMessage());
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            // consume только ставит обновление в очередь чата, поэтому Telegram получает ответ сразу
+            bot.consume(update);
+            exchange.sendResponseHeaders(200, -1);
+        }
+    }
+
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+}
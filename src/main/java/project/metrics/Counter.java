@@ -0,0 +1,31 @@
+package project.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Монотонный счётчик событий. LongAdder не создаёт общей точки конкуренции между потоками.
+ */
+public class Counter implements MetricsRegistry.Metric {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value.sum()).append('\n');
+    }
+}
@@ -0,0 +1,70 @@
+package project.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+Встроенный HTTP-сервер, отдающий метрики Prometheus на GET /metrics.
+По умолчанию слушает только localhost, наружу метрики отдаются через прокси или агент.
+ */
+public class MetricsServer {
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private MetricsServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Запускает сервер; при port <= 0 метрики по HTTP не публикуются и возвращается null.
+     */
+    public static MetricsServer start(MetricsRegistry registry, String host, int port) {
+        if (port <= 0) {
+            return null;
+        }
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+            ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+            server.setExecutor(executor);
+            server.createContext("/metrics", exchange -> handle(exchange, registry));
+            server.start();
+            System.out.println("📈 Metrics available at http://" + host + ":" + port + "/metrics");
+            return new MetricsServer(server, executor);
+        } catch (IOException e) {
+            System.err.println("Error starting metrics server on " + host + ":" + port + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void handle(HttpExchange exchange, MetricsRegistry registry) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,41 @@
+package project.model;
+
+import java.util.List;
+
+/*
+Одна страница списка напоминаний пользователя, отсортированного по времени срабатывания.
+offset - порядковый номер первого элемента страницы (для нумерации в сообщении).
+ */
+public class ReminderPage {
+    private final List<ScheduledReminder> reminders;
+    private final int offset;
+    private final boolean hasPrevious;
+    private final boolean hasNext;
+
+    public ReminderPage(List<ScheduledReminder> reminders, int offset, boolean hasPrevious, boolean hasNext) {
+        this.reminders = reminders;
+        this.offset = offset;
+        this.hasPrevious = hasPrevious;
+        this.hasNext = hasNext;
+    }
+
+    public List<ScheduledReminder> getReminders() {
+        return reminders;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public boolean hasPrevious() {
+        return hasPrevious;
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    public boolean isEmpty() {
+        return reminders.isEmpty();
+    }
+}
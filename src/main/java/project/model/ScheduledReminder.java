@@ -0,0 +1,81 @@
+package project.model;
+
+import org.bson.types.ObjectId;
+import project.util.RecurrenceRule;
+
+import java.time.Instant;
+import java.time.ZoneId;
+
+/*
+Напоминание, ожидающее отправки: всё, что нужно диспетчеру, чтобы доставить его пользователю.
+У повторяющегося есть правило и часовой пояс владельца: после отправки по ним считается следующий remindAt.
+flexibleTime - время не указано пользователем (полдень по умолчанию), такое напоминание можно отправить чуть раньше.
+ */
+public class ScheduledReminder {
+    private final ObjectId id;
+    private final String userId;
+    private final String title;
+    private final String text;
+    private final Instant remindAt;
+    private final RecurrenceRule recurrence;
+    private final ZoneId timeZone;
+    private final boolean flexibleTime;
+
+    public ScheduledReminder(ObjectId id, String userId, String title, String text, Instant remindAt) {
+        this(id, userId, title, text, remindAt, null, null, false);
+    }
+
+    public ScheduledReminder(ObjectId id, String userId, String title, String text, Instant remindAt,
+                             RecurrenceRule recurrence, ZoneId timeZone, boolean flexibleTime) {
+        this.id = id;
+        this.userId = userId;
+        this.title = title;
+        this.text = text;
+        this.remindAt = remindAt;
+        this.recurrence = recurrence;
+        this.timeZone = timeZone;
+        this.flexibleTime = flexibleTime;
+    }
+
+    // То же напоминание со следующим сроком
+    public ScheduledReminder withRemindAt(Instant nextRemindAt) {
+        return new ScheduledReminder(id, userId, title, text, nextRemindAt, recurrence, timeZone, flexibleTime);
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Instant getRemindAt() {
+        return remindAt;
+    }
+
+    public boolean isRecurring() {
+        return recurrence != null;
+    }
+
+    // null для разового напоминания
+    public RecurrenceRule getRecurrence() {
+        return recurrence;
+    }
+
+    public ZoneId getTimeZone() {
+        return timeZone;
+    }
+
+    public boolean isFlexibleTime() {
+        return flexibleTime;
+    }
+}
@@ -0,0 +1,272 @@
+package project.service;
+
+import project.config.ConfigLoader;
+import project.model.User;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+Структурированный асинхронный логгер.
+Вызывающий поток только занимает ячейку в заранее выделенном кольцевом буфере (CAS) и заполняет её,
+а единственный фоновый поток пачками пишет события JSON-строками в файл с ротацией по размеру.
+Если буфер полон, событие отбрасывается и учитывается в счётчике - вызывающий никогда не ждёт.
+ */
+public class AsyncLoggingService {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int MAX_BATCH = 512;
+
+    private final Slot[] slots;
+    private final int mask;
+    // Следующая свободная для записи позиция и позиция, до которой фоновый поток уже всё прочитал
+    private final AtomicLong head = new AtomicLong();
+    private volatile long consumed;
+
+    private final int debugSampleRate;
+    private final Path logFile;
+    private final long maxFileBytes;
+    private final int maxFiles;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private volatile long written;
+
+    private final Thread drainer;
+    private volatile boolean running = true;
+    private OutputStream out;
+    private long fileBytes;
+
+    private AsyncLoggingService() {
+        ConfigLoader config = ConfigLoader.getInstance();
+        int capacity = Integer.highestOneBit(Math.max(2, config.getLogBufferSize()) - 1) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.debugSampleRate = Math.max(1, config.getLogDebugSampleRate());
+        this.logFile = Paths.get(config.getLogFile());
+        this.maxFileBytes = config.getLogMaxFileSizeMb() * 1024L * 1024L;
+        this.maxFiles = Math.max(1, config.getLogMaxFiles());
+        openFile();
+
+        this.drainer = new Thread(this::drainLoop, "log-writer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    private static final class Holder {
+        private static final AsyncLoggingService INSTANCE = new AsyncLoggingService();
+    }
+
+    public static AsyncLoggingService getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    public void log(User user, String text, Enum status) {
+        String level = status.name();
+        // DEBUG пишется выборочно, одно событие из debugSampleRate
+        if ("DEBUG".equals(level) && debugSampleRate > 1 && ThreadLocalRandom.current().nextInt(debugSampleRate) != 0) {
+            sampledOut.incrementAndGet();
+            return;
+        }
+
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - consumed >= slots.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.timestamp = System.currentTimeMillis();
+        slot.level = level;
+        slot.userId = user != null ? user.getId() : 0;
+        slot.firstName = user != null ? user.getFirstName() : null;
+        slot.message = text;
+        // Публикация: после этой записи фоновый поток видит заполненные поля
+        slot.sequence = sequence;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getSampledOutCount() {
+        return sampledOut.get();
+    }
+
+    public long getWrittenCount() {
+        return written;
+    }
+
+    public int getQueueDepth() {
+        return (int) (head.get() - consumed);
+    }
+
+    public void close() {
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        StringBuilder line = new StringBuilder(256);
+        long next = consumed;
+        while (true) {
+            int batch = 0;
+            try {
+                while (batch < MAX_BATCH) {
+                    Slot slot = slots[(int) next & mask];
+                    if (slot.sequence != next) {
+                        break;
+                    }
+                    line.setLength(0);
+                    formatEvent(slot, line);
+                    slot.firstName = null;
+                    slot.message = null;
+                    next++;
+                    batch++;
+                    writeLine(line);
+                }
+                if (batch > 0) {
+                    consumed = next;
+                    written += batch;
+                    out.flush();
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing log file: " + e.getMessage());
+                consumed = next;
+            }
+
+            if (batch == 0) {
+                if (!running && head.get() == next) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        try {
+            if (out == System.out) {
+                out.flush();
+            } else {
+                out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing log file: " + e.getMessage());
+        }
+    }
+
+    private void writeLine(StringBuilder line) throws IOException {
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        if (fileBytes + bytes.length > maxFileBytes && fileBytes > 0) {
+            rotate();
+        }
+        out.write(bytes);
+        fileBytes += bytes.length;
+    }
+
+    // bot.log -> bot.log.1 -> ... -> bot.log.<maxFiles>, самый старый файл удаляется
+    private void rotate() throws IOException {
+        try {
+            out.close();
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path source = archive(i);
+                if (Files.exists(source)) {
+                    Files.move(source, archive(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(logFile, archive(1), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            // Даже если переименование не удалось, писать дальше есть куда: в прежний файл или в stdout
+            openFile();
+        }
+    }
+
+    private Path archive(int index) {
+        return logFile.resolveSibling(logFile.getFileName() + "." + index);
+    }
+
+    private void openFile() {
+        try {
+            Path parent = logFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            out = new BufferedOutputStream(Files.newOutputStream(logFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+            fileBytes = Files.size(logFile);
+        } catch (IOException e) {
+            // Без файла логи хотя бы не теряются
+            System.err.println("Error opening log file " + logFile + ", logging to stdout: " + e.getMessage());
+            out = System.out;
+            fileBytes = Long.MIN_VALUE;
+        }
+    }
+
+    private static void formatEvent(Slot slot, StringBuilder line) {
+        line.append("{\"ts\":\"");
+        DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(slot.timestamp), line);
+        line.append("\",\"level\":\"").append(slot.level)
+                .append("\",\"userId\":").append(slot.userId)
+                .append(",\"user\":");
+        appendJsonString(line, slot.firstName);
+        line.append(",\"msg\":");
+        appendJsonString(line, slot.message);
+        line.append("}\n");
+    }
+
+    private static void appendJsonString(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    private static final class Slot {
+        private volatile long sequence = -1;
+        private long timestamp;
+        private String level;
+        private long userId;
+        private String firstName;
+        private String message;
+    }
+}
@@ -0,0 +1,66 @@
+package project.service;
+
+import project.model.User;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Табличный конечный автомат диалога.
+Сначала ввод ищется в таблице команд (кнопки меню), иначе обрабатывается переходом
+текущего состояния. Таблица состояний - массив по ordinal(), так что выбор перехода
+на каждое сообщение стоит один lookup независимо от числа сценариев.
+ */
+public class ConversationEngine {
+    private final UserSessionService sessionService;
+    private final Map<String, Transition> commands;
+    private final Transition[] transitions;
+
+    public ConversationEngine(UserSessionService sessionService) {
+        this.sessionService = sessionService;
+        this.commands = new HashMap<>();
+        this.transitions = new Transition[ConversationState.values().length];
+    }
+
+    public ConversationEngine onCommand(String command, Transition transition) {
+        commands.put(command, transition);
+        return this;
+    }
+
+    public ConversationEngine onState(ConversationState state, Transition transition) {
+        transitions[state.ordinal()] = transition;
+        return this;
+    }
+
+    public void dispatch(User user, String input) {
+        // Сессию в хранилище кладём только если диалог продолжается, простые сообщения её не создают
+        UserSession stored = sessionService.findSession(user);
+        UserSession session = stored != null ? stored : new UserSession();
+
+        Transition transition = commands.get(input);
+        if (transition == null) {
+            transition = transitions[session.getState().ordinal()];
+        }
+        if (transition == null) {
+            throw new IllegalStateException("No transition for state " + session.getState());
+        }
+
+        ConversationState next = transition.apply(user, input, session);
+        if (next == ConversationState.IDLE) {
+            if (stored != null) {
+                sessionService.clearSession(user);
+            }
+        } else {
+            session.setState(next);
+            sessionService.updateSession(user, session);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Transition {
+        /**
+         * Обрабатывает ввод и возвращает следующее состояние. IDLE завершает диалог и удаляет сессию.
+         */
+        ConversationState apply(User user, String input, UserSession session);
+    }
+}
@@ -0,0 +1,11 @@
+package project.service;
+
+/*
+Состояния диалога с пользователем. Новое состояние - это новая строка в таблице ConversationEngine.
+ */
+public enum ConversationState {
+    IDLE,
+    AWAITING_TITLE,
+    AWAITING_TEXT,
+    AWAITING_DATE
+}
@@ -0,0 +1,141 @@
+package project.service;
+
+import org.bson.types.ObjectId;
+import project.model.ScheduledReminder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/*
+Сглаживание всплесков доставки. Напоминания без указанного времени (полдень по умолчанию)
+почти у всех приходятся на одну и ту же секунду; отправить их разом не позволяет лимит Telegram,
+и последние ушли бы с большим опозданием.
+
+Такие напоминания попадают сюда из колеса за toleranceMillis до срока. По числу активных напоминаний
+на каждую минуту (прогноз из индекса) планировщик знает, сколько секунд займёт отправка всплеска при
+sendRate сообщениях в секунду, и на столько же раньше начинает выпускать гибкие напоминания по порядку
+сроков, не больше sendRate за тик.
+Если всплеска нет, напоминание уходит в срок. Напоминания с указанным временем не сдвигаются
+и в каждом тике идут первыми.
+Ожидающее напоминание остаётся активным в базе, и опрос диспетчера приносит его снова: повторные копии
+не принимаются, пока напоминание не выпущено или не снято.
+ */
+public class DeliveryPlanner {
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final Comparator<ScheduledReminder> BY_DEADLINE =
+            Comparator.comparing(ScheduledReminder::getRemindAt).thenComparing(ScheduledReminder::getId);
+
+    private final double sendRate;
+    private final long toleranceMillis;
+    private final PriorityQueue<ScheduledReminder> staged = new PriorityQueue<>(BY_DEADLINE);
+    private final Set<ObjectId> stagedIds = new HashSet<>();
+    // Начало минуты (epoch millis) -> число напоминаний с этой минутой в сроке
+    private volatile Map<Long, Long> dueByMinute = Map.of();
+    private long releasedEarly;
+
+    public DeliveryPlanner(double sendRate, long toleranceMillis) {
+        if (sendRate <= 0) {
+            throw new IllegalArgumentException("Send rate must be positive");
+        }
+        this.sendRate = sendRate;
+        this.toleranceMillis = toleranceMillis;
+    }
+
+    // Момент, когда напоминание должно выйти из колеса
+    public long wheelDeadline(ScheduledReminder reminder) {
+        long remindAt = reminder.getRemindAt().toEpochMilli();
+        return reminder.isFlexibleTime() ? remindAt - toleranceMillis : remindAt;
+    }
+
+    // Минуты, на которые диспетчеру нужно посчитать прогноз
+    public long forecastUntil(long nowMillis) {
+        return minuteOf(nowMillis + toleranceMillis) + MINUTE_MILLIS;
+    }
+
+    public void updateForecast(Map<Long, Long> dueByMinute) {
+        this.dueByMinute = dueByMinute;
+    }
+
+    public static long minuteOf(long millis) {
+        return millis - Math.floorMod(millis, MINUTE_MILLIS);
+    }
+
+    /**
+     * Принимает напоминания, вышедшие из колеса, и возвращает те, что нужно отправить сейчас:
+     * сначала с указанным временем, затем гибкие по сроку. Остальные гибкие ждут следующего тика.
+     */
+    public synchronized List<ScheduledReminder> plan(List<ScheduledReminder> due, long nowMillis) {
+        List<ScheduledReminder> release = new ArrayList<>(due.size());
+        for (ScheduledReminder reminder : due) {
+            if (stagedIds.contains(reminder.getId())) {
+                // Уже ждёт здесь: выйдет вместе с остальными ожидающими
+                continue;
+            }
+            if (reminder.isFlexibleTime() && reminder.getRemindAt().toEpochMilli() > nowMillis) {
+                staged.add(reminder);
+                stagedIds.add(reminder.getId());
+            } else {
+                release.add(reminder);
+            }
+        }
+        release.sort(Comparator.comparing(ScheduledReminder::isFlexibleTime).thenComparing(BY_DEADLINE));
+
+        // Наступившие сроки отправляем всегда, раньше срока - только перед всплеском и в пределах бюджета тика.
+        // Раньше уходят ближайшие по сроку: так освобождается место и под напоминания с указанным временем
+        long budget = (long) Math.ceil(sendRate) - release.size();
+        boolean burstAhead = burstAhead(nowMillis);
+        while (!staged.isEmpty()) {
+            ScheduledReminder next = staged.peek();
+            long remindAt = next.getRemindAt().toEpochMilli();
+            if (remindAt > nowMillis && (budget <= 0 || !burstAhead)) {
+                break;
+            }
+            staged.poll();
+            stagedIds.remove(next.getId());
+            if (remindAt > nowMillis) {
+                releasedEarly++;
+            }
+            release.add(next);
+            budget--;
+        }
+        return release;
+    }
+
+    // Всплеск впереди, если до начала его минуты осталось меньше, чем займёт его отправка при sendRate в секунду
+    private boolean burstAhead(long nowMillis) {
+        for (Map.Entry<Long, Long> minute : dueByMinute.entrySet()) {
+            long leadMillis = Math.min(toleranceMillis, (long) (minute.getValue() * 1000 / sendRate));
+            if (nowMillis < minute.getKey() && nowMillis >= minute.getKey() - leadMillis) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized boolean isStaged(ObjectId reminderId) {
+        return stagedIds.contains(reminderId);
+    }
+
+    public synchronized boolean remove(ObjectId reminderId) {
+        return stagedIds.remove(reminderId) && staged.removeIf(reminder -> reminder.getId().equals(reminderId));
+    }
+
+    public synchronized void removeIf(Predicate<ScheduledReminder> filter) {
+        staged.removeIf(reminder -> filter.test(reminder) && stagedIds.remove(reminder.getId()));
+    }
+
+    public synchronized int getStagedCount() {
+        return staged.size();
+    }
+
+    public synchronized long getReleasedEarlyCount() {
+        return releasedEarly;
+    }
+}
@@ -1,73 +1,111 @@
 package project.service;
 
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
-import org.telegram.telegrambots.meta.generics.TelegramClient;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import project.metrics.LatencyHistogram;
+import project.metrics.MetricsRegistry;
 import project.model.User;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public class MessageHandler {
-    private final TelegramClient telegramClient;
+    // Момент получения обновления, которое обрабатывается в текущем потоке; 0 - ответ уже учтён
+    private static final ThreadLocal<long[]> UPDATE_RECEIVED = ThreadLocal.withInitial(() -> new long[1]);
 
-    public MessageHandler(TelegramClient telegramClient) {
-        this.telegramClient = telegramClient;
+    private final MessageSendPipeline sendPipeline;
+    private final LatencyHistogram updateToReplyTimer = MetricsRegistry.getInstance()
+            .histogram("bot_update_to_reply_seconds", "Time from receiving an update to delivering its first reply");
+
+    public MessageHandler(MessageSendPipeline sendPipeline) {
+        this.sendPipeline = sendPipeline;
+    }
+
+    /**
+     * Отмечает начало обработки обновления: первый ответ, отправленный из этого потока,
+     * попадёт в гистограмму "обновление -> ответ" после подтверждения от Telegram.
+     */
+    public void beginUpdate(long receivedNanos) {
+        UPDATE_RECEIVED.get()[0] = receivedNanos;
     }
 
-    public void sendTextMessage(User user, String messageText) {
-        sendTextMessage(String.valueOf(user.getChatId()), messageText);
+    public void endUpdate() {
+        UPDATE_RECEIVED.get()[0] = 0;
     }
 
-    public void sendTextMessage(String chatId, String messageText) {
-        sendTextMessage(chatId, messageText, false);
+    public CompletableFuture<Message> sendTextMessage(User user, String messageText) {
+        return sendTextMessage(String.valueOf(user.getChatId()), messageText);
     }
 
-    public void sendTextMessage(User user, String messageText, boolean enableMarkdown) {
-        sendTextMessage(String.valueOf(user.getChatId()), messageText, enableMarkdown);
+    public CompletableFuture<Message> sendTextMessage(String chatId, String messageText) {
+        return sendTextMessage(chatId, messageText, false);
     }
 
-    public void sendTextMessage(String chatId, String messageText, boolean enableMarkdown) {
+    public CompletableFuture<Message> sendTextMessage(User user, String messageText, boolean enableMarkdown) {
+        return sendTextMessage(String.valueOf(user.getChatId()), messageText, enableMarkdown);
+    }
+
+    public CompletableFuture<Message> sendTextMessage(String chatId, String messageText, boolean enableMarkdown) {
+        return sendTextMessage(chatId, messageText, enableMarkdown, null);
+    }
+
+    public CompletableFuture<Message> sendTextMessage(String chatId, String messageText, boolean enableMarkdown, InlineKeyboardMarkup inlineKeyboard) {
         SendMessage message = SendMessage.builder()
                 .chatId(chatId)
                 .text(messageText)
                 .parseMode(enableMarkdown ? "Markdown" : null)
+                .replyMarkup(inlineKeyboard)
                 .build();
-        sendMessageAsync(message);
+        return sendMessageAsync(message);
     }
 
-    public void sendStartKeyboard(User user) {
-        KeyboardRow keyboardRow = new KeyboardRow();
-        keyboardRow.add(new KeyboardButton("Создать напоминание"));
-        keyboardRow.add(new KeyboardButton("Мои напоминания"));
+    public void editTextMessage(String chatId, Integer messageId, String messageText, boolean enableMarkdown,
+                                InlineKeyboardMarkup inlineKeyboard) {
+        EditMessageText message = EditMessageText.builder()
+                .chatId(chatId)
+                .messageId(messageId)
+                .text(messageText)
+                .parseMode(enableMarkdown ? "Markdown" : null)
+                .replyMarkup(inlineKeyboard)
+                .build();
+        trackReply(sendPipeline.submit(chatId, message));
+    }
 
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        keyboard.add(keyboardRow);
+    public void answerCallbackQuery(String chatId, String callbackQueryId) {
+        trackReply(sendPipeline.submit(chatId, AnswerCallbackQuery.builder()
+                .callbackQueryId(callbackQueryId)
+                .build()));
+    }
 
-        ReplyKeyboardMarkup replyKeyboardMarkup = new ReplyKeyboardMarkup(keyboard);
-        replyKeyboardMarkup.setResizeKeyboard(true);
+    // Постоянный ответ: меняется только chat_id, тело запроса уже готово
+    public void sendTemplate(User user, MessageTemplate template) {
+        sendTemplate(String.valueOf(user.getChatId()), template);
+    }
 
-        SendMessage message = SendMessage.builder()
-                .chatId(user.getChatId())
-                .text("Выберите действие:")
-                .replyMarkup(replyKeyboardMarkup)
-                .build();
+    public void sendTemplate(String chatId, MessageTemplate template) {
+        trackReply(sendPipeline.submit(chatId, template));
+    }
+
+    public void sendStartKeyboard(User user) {
+        sendTemplate(user, MessageTemplates.START_KEYBOARD);
+    }
 
-        sendMessageAsync(message);
+    // Future завершается после ответа Telegram или с ошибкой, если очередь полна или повторы исчерпаны
+    private CompletableFuture<Message> sendMessageAsync(SendMessage message) {
+        CompletableFuture<Message> reply = sendPipeline.submit(message.getChatId(), message);
+        trackReply(reply);
+        return reply;
     }
 
-    private void sendMessageAsync(SendMessage message) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                telegramClient.execute(message);
-            } catch (TelegramApiException e) {
-                System.err.println("Error sending message: " + e.getMessage());
-            }
-        });
+    private void trackReply(CompletableFuture<?> reply) {
+        long[] received = UPDATE_RECEIVED.get();
+        if (received[0] != 0) {
+            long receivedNanos = received[0];
+            received[0] = 0;
+            reply.thenRun(() -> updateToReplyTimer.recordSince(receivedNanos));
+        }
     }
 
 //    public void sendWelcomeMessage(User user, boolean isExistingUser) {
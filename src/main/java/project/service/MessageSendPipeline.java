@@ -0,0 +1,264 @@
+package project.service;
+
+import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+import project.metrics.Counter;
+import project.metrics.LatencyHistogram;
+import project.metrics.MetricsRegistry;
+import project.util.TokenBucket;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/*
+Очередь исходящих запросов к Telegram.
+Ограничивает общую скорость отправки и скорость для каждого чата, сохраняет порядок
+сообщений внутри чата и повторяет запросы после 429 с учётом retry_after.
+Шаблонные сообщения при заданном rawTransport уходят готовым телом запроса, иначе - через telegramClient.
+ */
+public class MessageSendPipeline {
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final long IDLE_LANE_MILLIS = 60_000;
+    private static final int GLOBAL_BURST = 30;
+    private static final int CHAT_BURST = 3;
+
+    private final TelegramClient telegramClient;
+    private final TelegramRawTransport rawTransport;
+    private final TokenBucket globalBucket;
+    private final double chatRate;
+    private final Map<String, ChatLane> lanes;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Semaphore capacity;
+    private final int queueCapacity;
+    private final Map<String, LatencyHistogram> sendTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> errorCounters = new ConcurrentHashMap<>();
+    private final Counter rejected = MetricsRegistry.getInstance()
+            .counter("bot_telegram_send_rejected_total", "Requests rejected because the send queue was full");
+
+    public MessageSendPipeline(TelegramClient telegramClient, double globalRate, double chatRate,
+                               int threads, int queueCapacity) {
+        this(telegramClient, null, globalRate, chatRate, threads, queueCapacity);
+    }
+
+    // rawTransport может быть null: тогда шаблоны отправляются через telegramClient как обычный SendMessage
+    public MessageSendPipeline(TelegramClient telegramClient, TelegramRawTransport rawTransport, double globalRate,
+                               double chatRate, int threads, int queueCapacity) {
+        this.telegramClient = telegramClient;
+        this.rawTransport = rawTransport;
+        this.globalBucket = new TokenBucket(globalRate, GLOBAL_BURST);
+        this.chatRate = chatRate;
+        this.lanes = new ConcurrentHashMap<>();
+        this.capacity = new Semaphore(queueCapacity);
+        this.queueCapacity = queueCapacity;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "telegram-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+        this.executor.scheduleWithFixedDelay(this::evictIdleLanes, IDLE_LANE_MILLIS, IDLE_LANE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public <T extends Serializable> CompletableFuture<T> submit(String chatId, BotApiMethod<T> method) {
+        return enqueue(chatId, new Outbound<>(method, null, new CompletableFuture<>()));
+    }
+
+    public CompletableFuture<Message> submit(String chatId, MessageTemplate template) {
+        return enqueue(chatId, new Outbound<>(null, template, new CompletableFuture<>()));
+    }
+
+    private <T extends Serializable> CompletableFuture<T> enqueue(String chatId, Outbound<T> outbound) {
+        CompletableFuture<T> future = outbound.future;
+        if (!capacity.tryAcquire()) {
+            rejected.increment();
+            future.completeExceptionally(new RejectedExecutionException("Send queue is full"));
+            return future;
+        }
+
+        while (true) {
+            ChatLane lane = lanes.computeIfAbsent(chatId, id -> new ChatLane(id, new TokenBucket(chatRate, CHAT_BURST)));
+            synchronized (lane) {
+                if (lane.retired) {
+                    continue;
+                }
+                lane.queue.add(outbound);
+                lane.lastActivityMillis = System.currentTimeMillis();
+                if (!lane.scheduled) {
+                    lane.scheduled = true;
+                    executor.execute(() -> drain(lane));
+                }
+            }
+            return future;
+        }
+    }
+
+    public int getPendingCount() {
+        return queueCapacity - capacity.availablePermits();
+    }
+
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    private void drain(ChatLane lane) {
+        Outbound<?> outbound;
+        synchronized (lane) {
+            outbound = lane.queue.peek();
+            if (outbound == null) {
+                lane.scheduled = false;
+                return;
+            }
+        }
+
+        long waitNanos = lane.bucket.tryAcquire();
+        if (waitNanos == 0) {
+            waitNanos = globalBucket.tryAcquire();
+            if (waitNanos > 0) {
+                lane.bucket.refund();
+            }
+        }
+        if (waitNanos > 0) {
+            executor.schedule(() -> drain(lane), waitNanos, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        long start = System.nanoTime();
+        long retryDelayMillis = outbound.attempt(telegramClient, rawTransport, lane.chatId, this::countError);
+        sendTimers.computeIfAbsent(outbound.getMethodName(), method -> MetricsRegistry.getInstance()
+                .histogram("bot_telegram_request_seconds", "Telegram Bot API request latency", "method", method))
+                .recordSince(start);
+        if (retryDelayMillis > 0) {
+            executor.schedule(() -> drain(lane), retryDelayMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        capacity.release();
+        synchronized (lane) {
+            lane.queue.poll();
+            lane.lastActivityMillis = System.currentTimeMillis();
+            if (lane.queue.isEmpty()) {
+                lane.scheduled = false;
+                return;
+            }
+        }
+        // Следующее сообщение чата ставим в конец очереди исполнителя, чтобы не задерживать другие чаты
+        executor.execute(() -> drain(lane));
+    }
+
+    // code - HTTP-код ответа Telegram, "network" для сетевых ошибок или "client" для ошибок сериализации
+    private void countError(String code) {
+        errorCounters.computeIfAbsent(code, key -> MetricsRegistry.getInstance()
+                .counter("bot_telegram_errors_total", "Failed Telegram Bot API requests", "code", key))
+                .increment();
+    }
+
+    private void evictIdleLanes() {
+        long now = System.currentTimeMillis();
+        lanes.forEach((chatId, lane) -> {
+            synchronized (lane) {
+                if (!lane.scheduled && lane.queue.isEmpty()
+                        && now - lane.lastActivityMillis > IDLE_LANE_MILLIS && lane.bucket.isFull()) {
+                    lane.retired = true;
+                    lanes.remove(chatId, lane);
+                }
+            }
+        });
+    }
+
+    public void close() {
+        executor.shutdown();
+    }
+
+    private static final class ChatLane {
+        private final String chatId;
+        private final ArrayDeque<Outbound<?>> queue = new ArrayDeque<>();
+        private final TokenBucket bucket;
+        private boolean scheduled;
+        private boolean retired;
+        private long lastActivityMillis;
+
+        private ChatLane(String chatId, TokenBucket bucket) {
+            this.chatId = chatId;
+            this.bucket = bucket;
+        }
+    }
+
+    // Либо метод API, либо шаблон: для шаблона T - Message
+    private static final class Outbound<T extends Serializable> {
+        private final BotApiMethod<T> method;
+        private final MessageTemplate template;
+        private final CompletableFuture<T> future;
+        private int attempts;
+
+        private Outbound(BotApiMethod<T> method, MessageTemplate template, CompletableFuture<T> future) {
+            this.method = method;
+            this.template = template;
+            this.future = future;
+        }
+
+        private String getMethodName() {
+            return method != null ? method.getMethod() : SendMessage.PATH;
+        }
+
+        // Возвращает задержку до повторной попытки или 0, если запрос завершён (успешно или нет)
+        @SuppressWarnings("unchecked")
+        private long attempt(TelegramClient telegramClient, TelegramRawTransport rawTransport, String chatId,
+                             Consumer<String> errors) {
+            attempts++;
+            try {
+                if (method != null) {
+                    future.complete(telegramClient.execute(method));
+                } else if (rawTransport != null) {
+                    future.complete((T) rawTransport.sendMessage(chatId, template));
+                } else {
+                    future.complete((T) telegramClient.execute(template.toSendMessage(chatId)));
+                }
+                return 0;
+            } catch (TelegramApiRequestException e) {
+                Integer errorCode = e.getErrorCode();
+                errors.accept(errorCode != null ? String.valueOf(errorCode) : "network");
+                if (errorCode != null && errorCode == 429 && e.getParameters() != null
+                        && e.getParameters().getRetryAfter() != null && attempts < MAX_ATTEMPTS * 2) {
+                    return TimeUnit.SECONDS.toMillis(Math.max(1, e.getParameters().getRetryAfter()));
+                }
+                boolean retryable = errorCode == null || errorCode == 429 || errorCode >= 500;
+                return retryOrFail(e, retryable);
+            } catch (TelegramApiException e) {
+                // Сетевые ошибки и таймауты
+                errors.accept("network");
+                return retryOrFail(e, true);
+            } catch (RuntimeException e) {
+                errors.accept("client");
+                return retryOrFail(e, false);
+            }
+        }
+
+        private long retryOrFail(Exception e, boolean retryable) {
+            if (retryable && attempts < MAX_ATTEMPTS) {
+                long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempts - 1));
+                return backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            }
+            System.err.println("Error sending " + getMethodName() + " after " + attempts + " attempts: " + e.getMessage());
+            future.completeExceptionally(e);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package project.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboard;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+Неизменяемое исходящее сообщение с постоянным текстом и клавиатурой.
+Тело запроса sendMessage сериализуется один раз при создании; при отправке
+к нему приписывается только chat_id, поэтому JSON на каждый ответ не строится.
+ */
+public final class MessageTemplate {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final byte[] CHAT_ID_PREFIX = "{\"chat_id\":\"".getBytes(StandardCharsets.US_ASCII);
+
+    private final String text;
+    private final String parseMode;
+    private final ReplyKeyboard replyMarkup;
+    // Поля тела после chat_id, начиная с запятой и до закрывающей скобки
+    private final byte[] bodyTail;
+
+    public MessageTemplate(String text, boolean enableMarkdown, ReplyKeyboard replyMarkup) {
+        this.text = text;
+        this.parseMode = enableMarkdown ? "Markdown" : null;
+        this.replyMarkup = replyMarkup;
+        this.bodyTail = serializeTail();
+    }
+
+    public MessageTemplate(String text) {
+        this(text, false, null);
+    }
+
+    // Сериализуем тем же ObjectMapper-представлением, что и клиент библиотеки, и убираем chat_id
+    private byte[] serializeTail() {
+        ObjectNode body = MAPPER.valueToTree(toSendMessage("0"));
+        body.remove("chat_id");
+        try {
+            String json = MAPPER.writeValueAsString(body);
+            return ("\"," + json.substring(1)).getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize message template: " + text, e);
+        }
+    }
+
+    /**
+     * Готовое тело запроса для чата. chatId - числовой идентификатор, экранирование не нужно.
+     */
+    public byte[] body(String chatId) {
+        int idLength = chatId.length();
+        byte[] body = new byte[CHAT_ID_PREFIX.length + idLength + bodyTail.length];
+        System.arraycopy(CHAT_ID_PREFIX, 0, body, 0, CHAT_ID_PREFIX.length);
+        for (int i = 0; i < idLength; i++) {
+            body[CHAT_ID_PREFIX.length + i] = (byte) chatId.charAt(i);
+        }
+        System.arraycopy(bodyTail, 0, body, CHAT_ID_PREFIX.length + idLength, bodyTail.length);
+        return body;
+    }
+
+    // Для клиентов без прямой отправки тела: обычный SendMessage с общей клавиатурой
+    public SendMessage toSendMessage(String chatId) {
+        return SendMessage.builder()
+                .chatId(chatId)
+                .text(text)
+                .parseMode(parseMode)
+                .replyMarkup(replyMarkup)
+                .build();
+    }
+
+    public String getText() {
+        return text;
+    }
+}
@@ -0,0 +1,48 @@
+package project.service;
+
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
+
+import java.util.List;
+
+/*
+Постоянные ответы бота. Клавиатура и тела запросов собираются один раз при загрузке класса.
+ */
+public final class MessageTemplates {
+    public static final String CREATE_REMINDER = "Создать напоминание";
+    public static final String MY_REMINDERS = "Мои напоминания";
+
+    public static final MessageTemplate START_KEYBOARD = new MessageTemplate("Выберите действие:", false, startKeyboard());
+    public static final MessageTemplate ASK_TITLE = new MessageTemplate("Введите заголовок напоминания:");
+    public static final MessageTemplate ASK_TEXT = new MessageTemplate("Введите текст напоминания:");
+    public static final MessageTemplate ASK_DATE = new MessageTemplate(
+            "Введите дату напоминания (например: завтра в 14:30, в понедельник, через 2 часа 30 минут):");
+    public static final MessageTemplate NO_REMINDERS = new MessageTemplate("📝 У вас пока нет напоминаний");
+    public static final MessageTemplate BANNED = new MessageTemplate(
+            "Извините, вы заблокированы в системе. Обратитесь к администратору.");
+    public static final MessageTemplate PROCESSING_ERROR = new MessageTemplate(
+            "Произошла ошибка при обработке сообщения. Пожалуйста, попробуйте еще раз.");
+    public static final MessageTemplate TOO_MANY_UPDATES = new MessageTemplate(
+            "Слишком много сообщений подряд. Подождите немного и попробуйте снова.");
+    public static final MessageTemplate OVERLOADED = new MessageTemplate(
+            "Бот сейчас перегружен. Пожалуйста, повторите через минуту.");
+
+    private MessageTemplates() {
+    }
+
+    // Загружает класс, чтобы сериализация шаблонов прошла при запуске, а не на первом ответе
+    public static int preload() {
+        return START_KEYBOARD.getText().length();
+    }
+
+    private static ReplyKeyboardMarkup startKeyboard() {
+        KeyboardRow keyboardRow = new KeyboardRow();
+        keyboardRow.add(new KeyboardButton(CREATE_REMINDER));
+        keyboardRow.add(new KeyboardButton(MY_REMINDERS));
+
+        ReplyKeyboardMarkup replyKeyboardMarkup = new ReplyKeyboardMarkup(List.of(keyboardRow));
+        replyKeyboardMarkup.setResizeKeyboard(true);
+        return replyKeyboardMarkup;
+    }
+}
@@ -0,0 +1,353 @@
+package project.service;
+
+import org.bson.types.ObjectId;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import project.database.ChangeStreamWatcher;
+import project.database.DatabaseManager;
+import project.model.ScheduledReminder;
+import project.util.TimingWheel;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+Этот класс отвечает за доставку напоминаний в срок.
+Экземпляр обслуживает только шарды, арендованные через ShardLeaseManager. Активные напоминания
+этих шардов в пределах горизонта колеса держатся в памяти и загружаются при получении шарда
+и раз в RELOAD_INTERVAL_HOURS; раз в pollIntervalMillis подбираются ближайшие напоминания,
+созданные на других экземплярах. Перед отправкой напоминание атомарно захватывается в базе,
+поэтому даже при передаче шарда его отправит только один экземпляр. Отправленным (или перенесённым
+на следующий срок) оно отмечается только после ответа Telegram; неотправленное остаётся захваченным
+и возвращается в очередь, как захваты упавшего экземпляра.
+На наборе реплик напоминания, созданные или изменённые в другом месте, приходят из потока изменений сразу;
+опрос остаётся запасным путём.
+Повторяющееся напоминание после отправки получает следующий срок по своему правилу и снова ставится в колесо:
+в базе и в памяти всегда только одно, ближайшее срабатывание.
+Что именно отправлять в каждом тике, решает DeliveryPlanner: напоминания со временем по умолчанию
+он может выпустить раньше срока, если на их минуту приходится всплеск; прогноз по минутам обновляется при опросе.
+ */
+public class ReminderDispatcher implements ShardLeaseManager.Listener, ChangeStreamWatcher.ReminderListener {
+    private static final int WHEEL_DAYS = 8;
+    private static final long RELOAD_INTERVAL_HOURS = 6;
+
+    private final DatabaseManager databaseManager;
+    private final MessageHandler messageHandler;
+    private final ShardLeaseManager leases;
+    private final long pollIntervalMillis;
+    private final DeliveryPlanner planner;
+    // Шарды, полученные после последнего опроса: их горизонт нужно загрузить целиком
+    private final Set<Integer> acquiredShards = ConcurrentHashMap.newKeySet();
+    private final TimingWheel<ScheduledReminder> wheel;
+    private final Map<ObjectId, TimingWheel.Timeout<ScheduledReminder>> scheduled;
+    private final ScheduledExecutorService ticker;
+
+    public ReminderDispatcher(DatabaseManager databaseManager, MessageHandler messageHandler,
+                              ShardLeaseManager leases, DeliveryPlanner planner, long pollIntervalMillis) {
+        this.databaseManager = databaseManager;
+        this.messageHandler = messageHandler;
+        this.leases = leases;
+        this.planner = planner;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.wheel = new TimingWheel<>(WHEEL_DAYS, System.currentTimeMillis());
+        this.scheduled = new ConcurrentHashMap<>();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reminder-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Future завершается, когда шарды разобраны и их напоминания в пределах горизонта загружены в колесо
+    public CompletableFuture<Void> start() {
+        CompletableFuture<Void> loaded = CompletableFuture.runAsync(() -> {
+            leases.start(this);
+            poll();
+        }, ticker);
+        ticker.scheduleAtFixedRate(this::tick, 1, 1, TimeUnit.SECONDS);
+        ticker.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        ticker.scheduleAtFixedRate(this::reload, RELOAD_INTERVAL_HOURS, RELOAD_INTERVAL_HOURS, TimeUnit.HOURS);
+        return loaded;
+    }
+
+    // Напоминание чужого шарда не ставится: владелец подберёт его при следующем опросе
+    public void schedule(ScheduledReminder reminder) {
+        if (leases.owns(databaseManager.reminderShardOf(reminder.getUserId())) && scheduleLocal(reminder)) {
+            deliverClaimed(planner.plan(List.of(reminder), System.currentTimeMillis()));
+        }
+    }
+
+    // true, если срок выхода из колеса уже наступил: напоминание не ставится в колесо, его сразу получает планировщик
+    private boolean scheduleLocal(ScheduledReminder reminder) {
+        // Уже вышло из колеса и ждёт в планировщике: в базе оно по-прежнему активно и приходит с каждым опросом
+        if (planner.isStaged(reminder.getId())) {
+            return false;
+        }
+        boolean[] due = new boolean[1];
+        scheduled.computeIfAbsent(reminder.getId(), id -> {
+            TimingWheel.Timeout<ScheduledReminder> timeout = wheel.schedule(reminder, planner.wheelDeadline(reminder));
+            // null - за горизонтом колеса: подхватим при следующей перезагрузке
+            if (timeout != null && timeout.isExpired()) {
+                due[0] = true;
+                return null;
+            }
+            return timeout;
+        });
+        return due[0];
+    }
+
+    public boolean cancel(ObjectId reminderId) {
+        TimingWheel.Timeout<ScheduledReminder> timeout = scheduled.remove(reminderId);
+        return timeout != null && wheel.cancel(timeout) || planner.remove(reminderId);
+    }
+
+    // Своё же только что поставленное напоминание приходит из потока без изменений: его не трогаем
+    @Override
+    public void onReminderActive(ScheduledReminder reminder) {
+        TimingWheel.Timeout<ScheduledReminder> current = scheduled.get(reminder.getId());
+        if (current != null && sameDelivery(current.getPayload(), reminder)) {
+            return;
+        }
+        cancel(reminder.getId());
+        schedule(reminder);
+    }
+
+    @Override
+    public void onReminderInactive(ObjectId reminderId) {
+        cancel(reminderId);
+    }
+
+    private static boolean sameDelivery(ScheduledReminder a, ScheduledReminder b) {
+        return a.getRemindAt().equals(b.getRemindAt())
+                && Objects.equals(a.getTitle(), b.getTitle())
+                && Objects.equals(a.getText(), b.getText());
+    }
+
+    public int getPendingCount() {
+        return wheel.size();
+    }
+
+    public int getStagedCount() {
+        return planner.getStagedCount();
+    }
+
+    public long getReleasedEarlyCount() {
+        return planner.getReleasedEarlyCount();
+    }
+
+    public int getOwnedShardCount() {
+        return leases.getOwnedCount();
+    }
+
+    @Override
+    public void onShardAcquired(int shard) {
+        acquiredShards.add(shard);
+    }
+
+    // Напоминания отданного шарда снимаем с колеса; если новый владелец успеет раньше, захват всё равно не даст отправить дважды
+    @Override
+    public void onShardLost(int shard) {
+        acquiredShards.remove(shard);
+        for (TimingWheel.Timeout<ScheduledReminder> timeout : scheduled.values()) {
+            ScheduledReminder reminder = timeout.getPayload();
+            if (databaseManager.reminderShardOf(reminder.getUserId()) == shard) {
+                cancel(reminder.getId());
+            }
+        }
+        planner.removeIf(reminder -> databaseManager.reminderShardOf(reminder.getUserId()) == shard);
+    }
+
+    private void reload() {
+        try {
+            Set<Integer> shards = leases.getOwnedShards();
+            int loaded = load(shards, wheel.getHorizonMillis());
+            System.out.println("⏰ Reminder dispatcher loaded " + loaded + " upcoming reminders for " + shards.size() + " shards");
+        } catch (Exception e) {
+            System.err.println("Error loading upcoming reminders: " + e.getMessage());
+        }
+    }
+
+    private void poll() {
+        try {
+            Set<Integer> acquired = new HashSet<>(acquiredShards);
+            acquiredShards.removeAll(acquired);
+            acquired.retainAll(leases.getOwnedShards());
+            if (!acquired.isEmpty()) {
+                int loaded = load(acquired, wheel.getHorizonMillis());
+                System.out.println("⏰ Reminder dispatcher loaded " + loaded + " upcoming reminders for acquired shards " + acquired);
+            }
+
+            Set<Integer> shards = leases.getOwnedShards();
+            if (shards.isEmpty()) {
+                return;
+            }
+            // Захваченные, но не отправленные за ttl аренды: экземпляр упал между захватом и отправкой
+            long released = databaseManager.releaseStaleReminderClaims(shards, Instant.now().minus(leases.getTtl()));
+            if (released > 0) {
+                System.out.println("⏰ Returned " + released + " stale claimed reminders to the queue");
+            }
+            load(shards, System.currentTimeMillis() + 2 * pollIntervalMillis);
+            updateForecast(shards);
+        } catch (Exception e) {
+            System.err.println("Error polling reminders: " + e.getMessage());
+        }
+    }
+
+    // Число напоминаний на каждую минуту в пределах допуска планировщика, по индексу
+    private void updateForecast(Set<Integer> shards) {
+        long now = System.currentTimeMillis();
+        long until = planner.forecastUntil(now);
+        Map<Long, Long> dueByMinute = new LinkedHashMap<>();
+        for (long minute = DeliveryPlanner.minuteOf(now); minute < until; minute += TimeUnit.MINUTES.toMillis(1)) {
+            long count = databaseManager.countDueReminders(Instant.ofEpochMilli(minute),
+                    Instant.ofEpochMilli(minute + TimeUnit.MINUTES.toMillis(1)), shards);
+            if (count > 0) {
+                dueByMinute.put(minute, count);
+            }
+        }
+        planner.updateForecast(dueByMinute);
+    }
+
+    private int load(Set<Integer> shards, long untilMillis) {
+        if (shards.isEmpty()) {
+            return 0;
+        }
+        List<ScheduledReminder> upcoming = databaseManager.getUpcomingReminders(Instant.ofEpochMilli(untilMillis), shards);
+        // Просроченные (например, после простоя) захватываются и отмечаются одной пачкой
+        List<ScheduledReminder> overdue = new ArrayList<>();
+        for (ScheduledReminder reminder : upcoming) {
+            if (scheduleLocal(reminder)) {
+                overdue.add(reminder);
+            }
+        }
+        if (!overdue.isEmpty()) {
+            deliverClaimed(planner.plan(overdue, System.currentTimeMillis()));
+        }
+        return upcoming.size();
+    }
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            List<ScheduledReminder> due = wheel.advanceTo(now);
+            for (ScheduledReminder reminder : due) {
+                scheduled.remove(reminder.getId());
+            }
+            // Планировщик вызывается и без новых сроков: у него могут ждать гибкие напоминания
+            deliverClaimed(planner.plan(due, now));
+        } catch (Exception e) {
+            System.err.println("Error dispatching reminders: " + e.getMessage());
+        }
+    }
+
+    // Отправляет только то, что удалось захватить; остальное уже отправляет или отправил другой экземпляр
+    private void deliverClaimed(List<ScheduledReminder> planned) {
+        if (planned.isEmpty()) {
+            return;
+        }
+        // Захват один на id, поэтому и отправка одна, даже если копия попала в список дважды
+        Map<ObjectId, ScheduledReminder> unique = new LinkedHashMap<>();
+        for (ScheduledReminder reminder : planned) {
+            unique.putIfAbsent(reminder.getId(), reminder);
+        }
+        Collection<ScheduledReminder> due = unique.values();
+        List<ObjectId> ids = new ArrayList<>(unique.keySet());
+        List<ObjectId> claimed = databaseManager.claimReminders(ids, leases.getInstanceId());
+        if (claimed.isEmpty()) {
+            return;
+        }
+        Set<ObjectId> claimedIds = new HashSet<>(claimed);
+        List<ScheduledReminder> sending = new ArrayList<>(claimed.size());
+        List<CompletableFuture<Message>> replies = new ArrayList<>(claimed.size());
+        for (ScheduledReminder reminder : due) {
+            if (claimedIds.contains(reminder.getId())) {
+                sending.add(reminder);
+                replies.add(deliver(reminder));
+            }
+        }
+        // Отметка в базе - только после ответа Telegram. Неотправленные остаются захваченными,
+        // и releaseStaleReminderClaims вернёт их в очередь после ttl аренды
+        CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0]))
+                .whenCompleteAsync((ignored, error) -> completeDelivery(sending, replies), this::onTicker);
+    }
+
+    // После остановки диспетчера отправки ещё завершаются: отмечаем их в потоке отправки, пока база открыта
+    private void onTicker(Runnable task) {
+        try {
+            ticker.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private void completeDelivery(List<ScheduledReminder> sending, List<CompletableFuture<Message>> replies) {
+        try {
+            List<ObjectId> sent = new ArrayList<>(sending.size());
+            Map<ObjectId, Instant> nextRemindAt = new HashMap<>();
+            List<ScheduledReminder> rescheduled = new ArrayList<>();
+            int failed = 0;
+            Instant now = Instant.now();
+            for (int i = 0; i < sending.size(); i++) {
+                ScheduledReminder reminder = sending.get(i);
+                if (replies.get(i).isCompletedExceptionally()) {
+                    failed++;
+                    continue;
+                }
+                // Пропущенные за время простоя срабатывания не догоняем: следующее - после текущего момента
+                Instant next = reminder.isRecurring()
+                        ? reminder.getRecurrence().next(max(reminder.getRemindAt(), now), reminder.getTimeZone())
+                        : null;
+                if (next != null) {
+                    nextRemindAt.put(reminder.getId(), next);
+                    rescheduled.add(reminder.withRemindAt(next));
+                } else {
+                    sent.add(reminder.getId());
+                }
+            }
+            if (failed > 0) {
+                System.err.println("⏰ " + failed + " reminders were not sent, they will be retried after the claim expires");
+            }
+            if (!sent.isEmpty()) {
+                databaseManager.markRemindersSent(sent);
+            }
+            if (!nextRemindAt.isEmpty()) {
+                databaseManager.rescheduleReminders(nextRemindAt);
+                for (ScheduledReminder reminder : rescheduled) {
+                    schedule(reminder);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error completing reminder delivery: " + e.getMessage());
+        }
+    }
+
+    private static Instant max(Instant a, Instant b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private CompletableFuture<Message> deliver(ScheduledReminder reminder) {
+        String text = "⏰ Напоминание: " + reminder.getTitle();
+        if (reminder.getText() != null && !reminder.getText().isEmpty()) {
+            text += "\n" + reminder.getText();
+        }
+        return messageHandler.sendTextMessage(reminder.getUserId(), text);
+    }
+
+    public void close() {
+        ticker.shutdown();
+        leases.close();
+    }
+}
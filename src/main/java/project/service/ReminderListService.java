@@ -0,0 +1,130 @@
+package project.service;
+
+import org.bson.types.ObjectId;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
+import project.database.DatabaseManager;
+import project.model.ReminderPage;
+import project.model.ScheduledReminder;
+import project.model.User;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/*
+Постраничный вывод "Мои напоминания".
+Кнопки "назад/вперёд" несут в callback_data ключ (remindAt, _id) крайнего элемента страницы,
+поэтому соседняя страница читается диапазонным запросом по индексу, а не через skip.
+ */
+public class ReminderListService {
+    public static final String CALLBACK_PREFIX = "rem:";
+    private static final String NEXT = "n";
+    private static final String PREVIOUS = "p";
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yy HH:mm");
+
+    private final DatabaseManager databaseManager;
+    private final MessageHandler messageHandler;
+    private final int pageSize;
+
+    public ReminderListService(DatabaseManager databaseManager, MessageHandler messageHandler, int pageSize) {
+        this.databaseManager = databaseManager;
+        this.messageHandler = messageHandler;
+        this.pageSize = pageSize;
+    }
+
+    public void showFirstPage(User user) {
+        ReminderPage page = databaseManager.getRemindersPage(String.valueOf(user.getId()), null, null, true, 0, pageSize);
+        if (page.isEmpty()) {
+            messageHandler.sendTemplate(user, MessageTemplates.NO_REMINDERS);
+            return;
+        }
+        messageHandler.sendTextMessage(String.valueOf(user.getChatId()), formatPage(user, page), true, buildNavigation(page));
+    }
+
+    public boolean isListCallback(String data) {
+        return data != null && data.startsWith(CALLBACK_PREFIX);
+    }
+
+    // callback_data: rem:<n|p>:<remindAt millis>:<_id>:<offset>
+    public void handleCallback(User user, CallbackQuery callbackQuery) {
+        String chatId = String.valueOf(callbackQuery.getMessage().getChatId());
+        messageHandler.answerCallbackQuery(chatId, callbackQuery.getId());
+
+        String[] parts = callbackQuery.getData().split(":");
+        if (parts.length != 5 || !ObjectId.isValid(parts[3])) {
+            return;
+        }
+        boolean forward = NEXT.equals(parts[1]);
+        Instant cursorRemindAt = Instant.ofEpochMilli(Long.parseLong(parts[2]));
+        ObjectId cursorId = new ObjectId(parts[3]);
+        int offset = Integer.parseInt(parts[4]);
+
+        ReminderPage page = databaseManager.getRemindersPage(String.valueOf(user.getId()),
+                cursorRemindAt, cursorId, forward, offset, pageSize);
+        if (page.isEmpty()) {
+            return;
+        }
+        messageHandler.editTextMessage(chatId, callbackQuery.getMessage().getMessageId(),
+                formatPage(user, page), true, buildNavigation(page));
+    }
+
+    private String formatPage(User user, ReminderPage page) {
+        StringBuilder message = new StringBuilder("*Ваши напоминания:*\n\n");
+        int index = page.getOffset() + 1;
+        for (ScheduledReminder reminder : page.getReminders()) {
+            message.append('*').append(index++).append(")* ")
+                    .append(escapeMarkdown(reminder.getTitle()))
+                    .append(" - ")
+                    .append(escapeMarkdown(reminder.getText()))
+                    .append('\n');
+            message.append("⏰ *")
+                    .append(DATE_FORMATTER.format(reminder.getRemindAt().atZone(user.getTimeZone())))
+                    .append("*\n");
+            if (reminder.isRecurring()) {
+                message.append("🔁 ").append(escapeMarkdown(reminder.getRecurrence().describe())).append('\n');
+            }
+            message.append('\n');
+        }
+        return message.toString();
+    }
+
+    private InlineKeyboardMarkup buildNavigation(ReminderPage page) {
+        InlineKeyboardRow row = new InlineKeyboardRow();
+        if (page.hasPrevious()) {
+            ScheduledReminder first = page.getReminders().get(0);
+            row.add(button("⬅️ Назад", PREVIOUS, first, Math.max(0, page.getOffset() - pageSize)));
+        }
+        if (page.hasNext()) {
+            ScheduledReminder last = page.getReminders().get(page.getReminders().size() - 1);
+            row.add(button("Вперёд ➡️", NEXT, last, page.getOffset() + page.getReminders().size()));
+        }
+        return row.isEmpty() ? null : new InlineKeyboardMarkup(List.of(row));
+    }
+
+    private static InlineKeyboardButton button(String text, String direction, ScheduledReminder cursor, int offset) {
+        String data = CALLBACK_PREFIX + direction + ":" + cursor.getRemindAt().toEpochMilli()
+                + ":" + cursor.getId().toHexString() + ":" + offset;
+        return InlineKeyboardButton.builder()
+                .text(text)
+                .callbackData(data)
+                .build();
+    }
+
+    private static String escapeMarkdown(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '_' || c == '*' || c == '`' || c == '[') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
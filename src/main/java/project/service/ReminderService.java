@@ -2,137 +2,130 @@ package project.service;
 
 import project.LogStatus;
 import project.model.Reminders;
+import project.model.ScheduledReminder;
 import project.model.User;
 import project.database.DatabaseManager;
-import org.bson.Document;
+import project.util.DateParseResult;
+import project.util.DateTimeParser;
+import project.util.RecurrenceRule;
+import org.bson.types.ObjectId;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 
+import java.time.Instant;
 import java.time.ZoneId;
-import java.util.ArrayList;
-import java.util.List;
 
 public class ReminderService {
     private final DatabaseManager databaseManager;
     private final MessageHandler messageHandler;
-    private final UserSessionService sessionService;
-    private final ConsoleLoggingService loggingService;
+    private final AsyncLoggingService loggingService;
+    private final ReminderDispatcher reminderDispatcher;
+    private final ReminderListService reminderListService;
+    private final ConversationEngine conversation;
 
     public ReminderService(DatabaseManager databaseManager, MessageHandler messageHandler,
-                           UserSessionService sessionService, ConsoleLoggingService loggingService) {
+                           UserSessionService sessionService, AsyncLoggingService loggingService,
+                           ReminderDispatcher reminderDispatcher, ReminderListService reminderListService) {
         this.databaseManager = databaseManager;
         this.messageHandler = messageHandler;
-        this.sessionService = sessionService;
         this.loggingService = loggingService;
+        this.reminderDispatcher = reminderDispatcher;
+        this.reminderListService = reminderListService;
+
+        // Сценарий создания напоминания: заголовок -> текст -> дата
+        this.conversation = new ConversationEngine(sessionService)
+                .onCommand(MessageTemplates.CREATE_REMINDER, this::startReminderCreation)
+                .onCommand(MessageTemplates.MY_REMINDERS, this::showReminders)
+                .onState(ConversationState.IDLE, this::handleIdleInput)
+                .onState(ConversationState.AWAITING_TITLE, this::handleTitleInput)
+                .onState(ConversationState.AWAITING_TEXT, this::handleTextInput)
+                .onState(ConversationState.AWAITING_DATE, this::handleDateInput);
     }
 
     public void handleCommand(User user, String command) {
         // Проверяем, не забанен ли пользователь
         if (user.isBanned()) {
-            messageHandler.sendTextMessage(user, "Извините, вы заблокированы в системе. Обратитесь к администратору.");
+            messageHandler.sendTemplate(user, MessageTemplates.BANNED);
             return;
         }
 
-        // Обработка обычных команд
-        switch (command) {
-            case "Создать напоминание":
-                startReminderCreation(user, sessionService.getSession(user));
-                break;
-            case "Мои напоминания":
-                showReminders(user);
-                break;
-            default:
-                UserSession session = sessionService.getSession(user);
-                if (session != null && session.getReminder() != null) {
-                    handleReminderInput(user, command, session);
-                } else {
-                    //messageHandler.sendTextMessage(user, "❓ Неизвестная команда");
-                    messageHandler.sendStartKeyboard(user);
-                }
-        }
+        conversation.dispatch(user, command);
     }
 
+    public void handleCallback(User user, CallbackQuery callbackQuery) {
+        if (reminderListService.isListCallback(callbackQuery.getData())) {
+            reminderListService.handleCallback(user, callbackQuery);
+        } else {
+            messageHandler.answerCallbackQuery(String.valueOf(user.getChatId()), callbackQuery.getId());
+        }
+    }
 
-    private void startReminderCreation(User user, UserSession session) {
-        session.setCurrentStep("title");
-        session.setReminder(new Reminders(user));
-        messageHandler.sendTextMessage(user, "Введите заголовок напоминания:");
-        sessionService.updateSession(user, session);
+    private ConversationState startReminderCreation(User user, String input, UserSession session) {
+        session.setReminder(new Reminders());
+        messageHandler.sendTemplate(user, MessageTemplates.ASK_TITLE);
+        return ConversationState.AWAITING_TITLE;
     }
 
-    private void showReminders(User user) {
-        messageHandler.sendTextMessage(user, "Ваши напоминания:");
-        databaseManager.getAllReminders(String.valueOf(user.getId()), messageHandler);
+    private ConversationState showReminders(User user, String input, UserSession session) {
+        reminderListService.showFirstPage(user);
         messageHandler.sendStartKeyboard(user);
+        // Просмотр списка не прерывает начатое создание напоминания
+        return session.getState();
     }
 
-    private void handleReminderInput(User user, String input, UserSession session) {
-        if (session == null || session.getReminder() == null) {
-            messageHandler.sendTextMessage(user, "Пожалуйста, начните создание напоминания заново.");
-            messageHandler.sendStartKeyboard(user);
-            return;
-        }
-
-        switch (session.getCurrentStep()) {
-            case "title":
-                handleTitleInput(user, input, session);
-                break;
-            case "text":
-                handleTextInput(user, input, session);
-                break;
-            case "date":
-                handleDateInput(user, input, session);
-                break;
-            default:
-                messageHandler.sendTextMessage(user, "Неизвестная команда. Пожалуйста, начните заново.");
-                messageHandler.sendStartKeyboard(user);
-                sessionService.clearSession(user);
-        }
+    private ConversationState handleIdleInput(User user, String input, UserSession session) {
+        //messageHandler.sendTextMessage(user, "❓ Неизвестная команда");
+        messageHandler.sendStartKeyboard(user);
+        return ConversationState.IDLE;
     }
 
-    private void handleTitleInput(User user, String input, UserSession session) {
+    private ConversationState handleTitleInput(User user, String input, UserSession session) {
         session.getReminder().setTitle(input);
-        session.setCurrentStep("text");
-        messageHandler.sendTextMessage(user, "Введите текст напоминания:");
-        sessionService.updateSession(user, session);
+        messageHandler.sendTemplate(user, MessageTemplates.ASK_TEXT);
+        return ConversationState.AWAITING_TEXT;
     }
 
-    private void handleTextInput(User user, String input, UserSession session) {
+    private ConversationState handleTextInput(User user, String input, UserSession session) {
         session.getReminder().setText(input);
-        session.setCurrentStep("date");
-        messageHandler.sendTextMessage(user, "Введите дату напоминания (например: сегодня, завтра, в понедельник, через 2 дня):");
-        sessionService.updateSession(user, session);
+        messageHandler.sendTemplate(user, MessageTemplates.ASK_DATE);
+        return ConversationState.AWAITING_DATE;
     }
 
-    private void handleDateInput(User user, String input, UserSession session) {
+    private ConversationState handleDateInput(User user, String input, UserSession session) {
         loggingService.log(user, "Date input: " + input, LogStatus.INFO);
 
-        if (!session.getReminder().isValidDate(input)) {
-            try {
-                session.getReminder().isValidDate(input);
-            } catch (IllegalArgumentException e) {
-                loggingService.log(user, "Invalid date format: " + e.getMessage(), LogStatus.ERROR);
-                messageHandler.sendTextMessage(user, e.getMessage());
-                return;
-            }
-            messageHandler.sendTextMessage(user, "Некорректный формат даты. Используйте:\n" +
-                    "- dd/MM/yy HH:mm (например, 25/12/23 15:30)\n" +
-                    "- завтра в HH:mm (например, завтра в 14:32 или 14.32)\n" +
-                    "- сегодня, завтра, послезавтра\n" +
-                    "- день недели (например, понедельник)\n" +
-                    "- через X дней/часов/минут");
-            return;
+        // Ввод разбирается один раз, дальше используется готовый результат
+        DateParseResult parsed = DateTimeParser.parse(input, user.getTimeZone());
+        if (!parsed.isSuccess()) {
+            messageHandler.sendTextMessage(user, parsed.getError());
+            return ConversationState.AWAITING_DATE;
         }
 
         try {
-            session.getReminder().createReminder(input);
+            ScheduledReminder reminder = saveReminder(user, session.getReminder(), parsed);
+            reminderDispatcher.schedule(reminder);
             loggingService.log(user, "Reminder created successfully", LogStatus.INFO);
-            messageHandler.sendTextMessage(user, "Напоминание успешно создано!");
-            sessionService.clearSession(user);
+            String reply = "Напоминание успешно создано!";
+            if (reminder.isRecurring()) {
+                reply += "\n🔁 Повтор: " + reminder.getRecurrence().describe();
+            }
+            messageHandler.sendTextMessage(user, reply);
         } catch (Exception e) {
             loggingService.log(user, "Error creating reminder: " + e.getMessage(), LogStatus.ERROR);
             messageHandler.sendTextMessage(user, "Произошла ошибка при создании напоминания: " + e.getMessage());
-            sessionService.clearSession(user);
         }
+        return ConversationState.IDLE;
     }
 
-
+    private ScheduledReminder saveReminder(User user, Reminders draft, DateParseResult parsed) {
+        String userId = String.valueOf(user.getId());
+
+        // В базе храним момент времени в UTC; для повторяющихся ещё и пояс, в котором считать следующие сроки
+        Instant remindAt = parsed.getDateTime().atZone(user.getTimeZone()).toInstant();
+        RecurrenceRule recurrence = parsed.getRecurrence();
+        ZoneId timeZone = recurrence != null ? user.getTimeZone() : null;
+        boolean flexibleTime = !parsed.hasExplicitTime();
+        ObjectId id = databaseManager.addReminder(userId, draft.getTitle(), draft.getText(), Instant.now(), remindAt,
+                recurrence, timeZone, flexibleTime);
+        return new ScheduledReminder(id, userId, draft.getTitle(), draft.getText(), remindAt, recurrence, timeZone, flexibleTime);
+    }
 }
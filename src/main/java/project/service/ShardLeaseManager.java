@@ -0,0 +1,154 @@
+package project.service;
+
+import project.database.DatabaseManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+Распределяет шарды напоминаний между экземплярами бота через аренды.
+Каждый экземпляр держит аренду member:<id> как признак жизни и берёт не больше
+справедливой доли шардов (шардов / живых экземпляров, с округлением вверх): лишние отпускает,
+свободные и истёкшие забирает. Упавший экземпляр перестаёт продлевать аренды,
+и через ttl его шарды расходятся по остальным.
+ */
+public class ShardLeaseManager {
+    private static final String MEMBER_PREFIX = "member:";
+    private static final String SHARD_PREFIX = "shard:";
+
+    private final DatabaseManager databaseManager;
+    private final String instanceId;
+    private final int shardCount;
+    private final Duration ttl;
+    private final long renewMillis;
+    private final Set<Integer> owned = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService renewer;
+    private volatile Listener listener;
+    private long lastRenewedMillis;
+
+    public interface Listener {
+        void onShardAcquired(int shard);
+
+        void onShardLost(int shard);
+    }
+
+    public ShardLeaseManager(DatabaseManager databaseManager, String instanceId, long ttlMillis, long renewMillis) {
+        if (renewMillis >= ttlMillis) {
+            throw new IllegalArgumentException("Lease renew interval must be shorter than lease ttl");
+        }
+        this.databaseManager = databaseManager;
+        this.instanceId = instanceId;
+        this.shardCount = databaseManager.getReminderShardCount();
+        this.ttl = Duration.ofMillis(ttlMillis);
+        this.renewMillis = renewMillis;
+        this.renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-leases-" + instanceId);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Выполняет первый раунд в вызывающем потоке, чтобы к возврату шарды уже были разобраны,
+     * дальше продлевает аренды раз в renewMillis.
+     */
+    public void start(Listener listener) {
+        this.listener = listener;
+        rebalance();
+        renewer.scheduleWithFixedDelay(this::rebalance, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean owns(int shard) {
+        return owned.contains(shard);
+    }
+
+    public Set<Integer> getOwnedShards() {
+        return Set.copyOf(owned);
+    }
+
+    public int getOwnedCount() {
+        return owned.size();
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    private void rebalance() {
+        long nowMillis = System.currentTimeMillis();
+        Instant now = Instant.ofEpochMilli(nowMillis);
+        try {
+            databaseManager.tryAcquireLease(MEMBER_PREFIX + instanceId, instanceId, now, ttl);
+            Map<String, String> live = databaseManager.getLiveLeases(now);
+            long members = Math.max(1, live.keySet().stream().filter(name -> name.startsWith(MEMBER_PREFIX)).count());
+            int fairShare = (int) ((shardCount + members - 1) / members);
+
+            for (int shard : new TreeSet<>(owned)) {
+                if (!databaseManager.tryAcquireLease(SHARD_PREFIX + shard, instanceId, now, ttl)) {
+                    lose(shard);
+                }
+            }
+            // Лишние шарды отдаём с конца, чтобы новые экземпляры забрали их на своём раунде
+            TreeSet<Integer> surplus = new TreeSet<>(owned);
+            while (surplus.size() > fairShare) {
+                int shard = surplus.pollLast();
+                databaseManager.releaseLease(SHARD_PREFIX + shard, instanceId);
+                lose(shard);
+            }
+            for (int shard = 0; shard < shardCount && owned.size() < fairShare; shard++) {
+                if (owned.contains(shard) || live.containsKey(SHARD_PREFIX + shard)) {
+                    continue;
+                }
+                if (databaseManager.tryAcquireLease(SHARD_PREFIX + shard, instanceId, now, ttl)) {
+                    owned.add(shard);
+                    listener.onShardAcquired(shard);
+                }
+            }
+            lastRenewedMillis = nowMillis;
+        } catch (Exception e) {
+            System.err.println("Error renewing shard leases: " + e.getMessage());
+            // Продлить не удалось дольше ttl: шарды уже могли забрать, перестаём их обслуживать
+            if (nowMillis - lastRenewedMillis >= ttl.toMillis()) {
+                for (int shard : Set.copyOf(owned)) {
+                    lose(shard);
+                }
+            }
+        }
+    }
+
+    private void lose(int shard) {
+        if (owned.remove(shard)) {
+            listener.onShardLost(shard);
+        }
+    }
+
+    // Отпускает аренды, чтобы другие экземпляры забрали шарды сразу, не дожидаясь ttl
+    public void close() {
+        renewer.shutdown();
+        try {
+            renewer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            for (int shard : Set.copyOf(owned)) {
+                databaseManager.releaseLease(SHARD_PREFIX + shard, instanceId);
+            }
+            databaseManager.releaseLease(MEMBER_PREFIX + instanceId, instanceId);
+        } catch (Exception e) {
+            System.err.println("Error releasing shard leases: " + e.getMessage());
+        }
+        owned.clear();
+    }
+}
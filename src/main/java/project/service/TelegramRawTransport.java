@@ -0,0 +1,60 @@
+package project.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.IOException;
+
+/*
+Отправка заранее сериализованных сообщений напрямую через OkHttp, минуя сериализацию библиотеки.
+Ошибки разбираются в те же исключения, что и у клиента библиотеки (вместе с retry_after для 429),
+поэтому повторы в MessageSendPipeline работают одинаково для обоих путей.
+ */
+public class TelegramRawTransport {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final TypeReference<ApiResponse<Message>> MESSAGE_RESPONSE = new TypeReference<>() {
+    };
+
+    private final OkHttpClient httpClient;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String sendMessageUrl;
+
+    public TelegramRawTransport(String botToken) {
+        this(new OkHttpClient(), "https://api.telegram.org", botToken);
+    }
+
+    public TelegramRawTransport(OkHttpClient httpClient, String baseUrl, String botToken) {
+        this.httpClient = httpClient;
+        this.sendMessageUrl = baseUrl + "/bot" + botToken + "/sendMessage";
+    }
+
+    public Message sendMessage(String chatId, MessageTemplate template) throws TelegramApiException {
+        Request request = new Request.Builder()
+                .url(sendMessageUrl)
+                .post(RequestBody.create(template.body(chatId), JSON))
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (body == null) {
+                throw new TelegramApiException("Empty response, HTTP " + response.code());
+            }
+            ApiResponse<Message> result = mapper.readValue(body.byteStream(), MESSAGE_RESPONSE);
+            if (!Boolean.TRUE.equals(result.getOk())) {
+                throw new TelegramApiRequestException("Error sending message", result);
+            }
+            return result.getResult();
+        } catch (IOException e) {
+            throw new TelegramApiException("Unable to execute sendMessage method", e);
+        }
+    }
+}
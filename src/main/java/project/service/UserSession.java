@@ -6,20 +6,22 @@ import project.model.Reminders;
 и содержит данные о текущем состоянии взаимодействия с ботом.
  */
 public class UserSession {
-    private String currentStep;
+    private ConversationState state;
     private Reminders reminder;
+    private volatile long lastAccessMillis;
 
     public UserSession() {
-        this.currentStep = "";
+        this.state = ConversationState.IDLE;
         this.reminder = null;
+        this.lastAccessMillis = System.currentTimeMillis();
     }
 
-    public String getCurrentStep() {
-        return currentStep;
+    public ConversationState getState() {
+        return state;
     }
 
-    public void setCurrentStep(String currentStep) {
-        this.currentStep = currentStep;
+    public void setState(ConversationState state) {
+        this.state = state;
     }
 
     public void setReminder(Reminders reminder) {
@@ -29,4 +31,16 @@ public class UserSession {
     public Reminders getReminder() {
         return reminder;
     }
+
+    public long getLastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    void touch() {
+        this.lastAccessMillis = System.currentTimeMillis();
+    }
+
+    void setLastAccessMillis(long lastAccessMillis) {
+        this.lastAccessMillis = lastAccessMillis;
+    }
 }
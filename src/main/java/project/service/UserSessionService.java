@@ -1,44 +1,259 @@
 package project.service;
 
+import project.config.ConfigLoader;
+import project.model.Reminders;
 import project.model.User;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import project.util.LongHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /*
 Этот класс отвечает за управление сессиями пользователей.
+Сессии лежат в сегментированной таблице с ключами long, простаивающие дольше TTL удаляются,
+а при остановке бота сохраняются в файл и загружаются при следующем старте.
  */
 
 public class UserSessionService {
-    private static UserSessionService instance;
-    private final Map<Long, UserSession> userSessions;
+    private static final int SEGMENTS = 16;
+    private static final int SNAPSHOT_MAGIC = 0x55534553;
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final long SWEEP_INTERVAL_SECONDS = 60;
+
+    private final Segment[] segments;
+    private final long ttlMillis;
+    private final Path snapshotFile;
+    private final ScheduledExecutorService sweeper;
 
     private UserSessionService() {
-        userSessions = new ConcurrentHashMap<>();
+        ConfigLoader config = ConfigLoader.getInstance();
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(config.getSessionTtlMinutes());
+        this.snapshotFile = Paths.get(config.getSessionSnapshotFile());
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        loadSnapshot();
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::evictExpired, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
     }
 
-    public static synchronized UserSessionService getInstance() {
-        if (instance == null) {
-            instance = new UserSessionService();
-        }
-        return instance;
+    private static final class Holder {
+        private static final UserSessionService INSTANCE = new UserSessionService();
+    }
+
+    public static UserSessionService getInstance() {
+        return Holder.INSTANCE;
     }
 
     public UserSession getSession(User user) {
-        Long userId = user.getId();
-        if (userSessions.containsKey(userId)) {
-            return userSessions.get(userId);
-        } else {
-            UserSession newSession = new UserSession();
-            userSessions.put(userId, newSession);
-            return newSession;
+        long userId = user.getId();
+        Segment segment = segmentFor(userId);
+        segment.lock.lock();
+        try {
+            UserSession session = segment.sessions.get(userId);
+            if (session == null) {
+                session = new UserSession();
+                segment.sessions.put(userId, session);
+            }
+            session.touch();
+            return session;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // В отличие от getSession не создаёт сессию, если её нет
+    public UserSession findSession(User user) {
+        long userId = user.getId();
+        Segment segment = segmentFor(userId);
+        segment.lock.lock();
+        try {
+            UserSession session = segment.sessions.get(userId);
+            if (session != null) {
+                session.touch();
+            }
+            return session;
+        } finally {
+            segment.lock.unlock();
         }
     }
 
     public void updateSession(User user, UserSession session) {
-        userSessions.put(user.getId(), session);
+        long userId = user.getId();
+        Segment segment = segmentFor(userId);
+        segment.lock.lock();
+        try {
+            session.touch();
+            segment.sessions.put(userId, session);
+        } finally {
+            segment.lock.unlock();
+        }
     }
 
     public void clearSession(User user) {
-        userSessions.remove(user.getId());
+        long userId = user.getId();
+        Segment segment = segmentFor(userId);
+        segment.lock.lock();
+        try {
+            segment.sessions.remove(userId);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public int getSessionCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                count += segment.sessions.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    private void evictExpired() {
+        long expireBefore = System.currentTimeMillis() - ttlMillis;
+        int evicted = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                evicted += segment.sessions.removeIf(session -> session.getLastAccessMillis() < expireBefore);
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        if (evicted > 0) {
+            System.out.println("Evicted " + evicted + " idle user sessions");
+        }
+    }
+
+    /**
+     * Сохраняет незавершённые сессии в файл. Пишем во временный файл и атомарно подменяем,
+     * чтобы прерванная запись не испортила предыдущий снимок.
+     */
+    public void saveSnapshot() {
+        sweeper.shutdown();
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        int[] saved = new int[1];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            for (Segment segment : segments) {
+                segment.lock.lock();
+                try {
+                    segment.sessions.forEach((userId, session) -> {
+                        try {
+                            writeSession(out, userId, session);
+                            saved[0]++;
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    });
+                } finally {
+                    segment.lock.unlock();
+                }
+            }
+            out.writeLong(-1);
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Error saving user sessions: " + e.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("💾 Saved " + saved[0] + " user sessions to " + snapshotFile);
+        } catch (IOException e) {
+            System.err.println("Error saving user sessions: " + e.getMessage());
+        }
+    }
+
+    private void loadSnapshot() {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        long expireBefore = System.currentTimeMillis() - ttlMillis;
+        int loaded = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                System.err.println("Ignoring user session snapshot with unknown format: " + snapshotFile);
+                return;
+            }
+            long userId;
+            while ((userId = in.readLong()) != -1) {
+                UserSession session = readSession(in);
+                if (session.getLastAccessMillis() >= expireBefore) {
+                    segmentFor(userId).sessions.put(userId, session);
+                    loaded++;
+                }
+            }
+            System.out.println("💾 Restored " + loaded + " user sessions from " + snapshotFile);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error loading user sessions: " + e.getMessage());
+        }
+    }
+
+    private static void writeSession(DataOutputStream out, long userId, UserSession session) throws IOException {
+        out.writeLong(userId);
+        out.writeLong(session.getLastAccessMillis());
+        out.writeUTF(session.getState().name());
+        Reminders reminder = session.getReminder();
+        out.writeBoolean(reminder != null);
+        if (reminder != null) {
+            writeNullableString(out, reminder.getTitle());
+            writeNullableString(out, reminder.getText());
+        }
+    }
+
+    private static UserSession readSession(DataInputStream in) throws IOException {
+        UserSession session = new UserSession();
+        session.setLastAccessMillis(in.readLong());
+        session.setState(ConversationState.valueOf(in.readUTF()));
+        if (in.readBoolean()) {
+            Reminders reminder = new Reminders();
+            reminder.setTitle(readNullableString(in));
+            reminder.setText(readNullableString(in));
+            session.setReminder(reminder);
+        }
+        return session;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private Segment segmentFor(long userId) {
+        return segments[(int) (userId ^ (userId >>> 32)) & (SEGMENTS - 1)];
+    }
+
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LongHashMap<UserSession> sessions = new LongHashMap<>(1024);
     }
 }
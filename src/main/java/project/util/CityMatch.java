@@ -0,0 +1,41 @@
+package project.util;
+
+import java.time.ZoneId;
+import java.util.List;
+
+/*
+Результат поиска города: найденный город (если есть) и до пяти похожих названий.
+ */
+public class CityMatch {
+    private final boolean validInput;
+    private final String cityName;
+    private final ZoneId timeZone;
+    private final List<String> suggestions;
+
+    CityMatch(boolean validInput, String cityName, ZoneId timeZone, List<String> suggestions) {
+        this.validInput = validInput;
+        this.cityName = cityName;
+        this.timeZone = timeZone;
+        this.suggestions = suggestions;
+    }
+
+    public boolean isValidInput() {
+        return validInput;
+    }
+
+    public boolean isFound() {
+        return timeZone != null;
+    }
+
+    public String getCityName() {
+        return cityName;
+    }
+
+    public ZoneId getTimeZone() {
+        return timeZone;
+    }
+
+    public List<String> getSuggestions() {
+        return suggestions;
+    }
+}
@@ -0,0 +1,55 @@
+package project.util;
+
+import java.time.LocalDateTime;
+
+/*
+Результат разбора даты: либо момент времени, либо текст ошибки для пользователя.
+explicitTime - пользователь сам указал время, а не получил время по умолчанию.
+Для повторяющегося напоминания dateTime - первое срабатывание правила recurrence.
+ */
+public class DateParseResult {
+    private final LocalDateTime dateTime;
+    private final boolean explicitTime;
+    private final RecurrenceRule recurrence;
+    private final String error;
+
+    private DateParseResult(LocalDateTime dateTime, boolean explicitTime, RecurrenceRule recurrence, String error) {
+        this.dateTime = dateTime;
+        this.explicitTime = explicitTime;
+        this.recurrence = recurrence;
+        this.error = error;
+    }
+
+    public static DateParseResult success(LocalDateTime dateTime, boolean explicitTime) {
+        return new DateParseResult(dateTime, explicitTime, null, null);
+    }
+
+    public static DateParseResult recurring(LocalDateTime firstDateTime, boolean explicitTime, RecurrenceRule recurrence) {
+        return new DateParseResult(firstDateTime, explicitTime, recurrence, null);
+    }
+
+    public static DateParseResult failure(String error) {
+        return new DateParseResult(null, false, null, error);
+    }
+
+    public boolean isSuccess() {
+        return dateTime != null;
+    }
+
+    public LocalDateTime getDateTime() {
+        return dateTime;
+    }
+
+    public boolean hasExplicitTime() {
+        return explicitTime;
+    }
+
+    // null для разового напоминания
+    public RecurrenceRule getRecurrence() {
+        return recurrence;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -1,128 +1,534 @@
 package project.util;
 
 import java.time.*;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.time.temporal.TemporalAdjusters;
+import java.util.HashMap;
+import java.util.Map;
 
+/*
+Разбор даты напоминания за один проход без исключений.
+Ввод режется на токены (число, время, дата, слово из словаря), затем грамматика собирает
+из них дату, время и относительный сдвиг. Словарь строится один раз при загрузке класса.
+Повторы ("каждый день в 9:00", "по будням", "каждое 15 число") собираются в RecurrenceRule,
+датой результата становится его первое срабатывание.
+ */
 public class DateTimeParser {
-    private static final Pattern TIME_PATTERN = Pattern.compile("(\\d{1,2})[:.](\\d{2})");
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yy[ HH:mm]");
+    public static final String FORMAT_HELP = "Некорректный формат даты. Используйте:\n" +
+            "- dd/MM/yy HH:mm (например, 25/12/23 15:30)\n" +
+            "- завтра в HH:mm (например, завтра в 14:32 или 14.32)\n" +
+            "- сегодня, завтра, послезавтра\n" +
+            "- день недели (например, понедельник в 10:00)\n" +
+            "- через X дней/часов/минут (например, через 2 часа 30 минут)\n" +
+            "- каждый день в 9:00, по будням в 9:00, каждый понедельник и четверг в 10:00, каждое 15 число в 12:00\n" +
+            "- today, tomorrow, in 2 hours, at 14:30";
 
-    public static LocalDateTime parseUserInput(String input, ZoneId userTimeZone) {
-        input = input.toLowerCase().trim();
-        LocalDateTime now = LocalDateTime.now(userTimeZone);
-
-        try {
-            // Попытка разобрать стандартный формат
-            return LocalDateTime.parse(input, DATE_FORMATTER);
-        } catch (Exception e) {
-            // Обработка естественного языка
-//            if (input.startsWith("завтра")) {
-//                return parseTomorrowWithTime(input, now);
-//            }
-
-            switch (input) {
-                case "сегодня":
-                    return now.withHour(12).withMinute(0);
-                case "завтра":
-                    return now.plusDays(1).withHour(12).withMinute(0);
-                case "послезавтра":
-                    return now.plusDays(2).withHour(12).withMinute(0);
-                default:
-                    // Обработка дней недели
-                    DayOfWeek targetDay = parseDayOfWeek(input);
-                    if (targetDay != null) {
-                        return getNextDayOfWeek(now, targetDay);
-                    }
+    private static final LocalTime DEFAULT_TIME = LocalTime.NOON;
+    private static final int MAX_NUMBER_DIGITS = 6;
 
-                    // Обработка относительных дат
-                    if (input.contains("через")) {
-                        return parseRelativeDate(input, now);
-                    }
-            }
+    private enum Kind { NUMBER, TIME, DATE, DAY_OFFSET, WEEKDAY, IN, AT, UNIT, NEXT, EVERY, BY, DAY_SET, AND, MONTH, DAY_MARK }
+
+    // Дни недели для повторов: бит (DayOfWeek.getValue() - 1)
+    private static final int WORKDAYS = 0b0011111;
+    private static final int WEEKEND = 0b1100000;
+
+    // Единицы относительного сдвига в минутах
+    private static final int MINUTE = 1;
+    private static final int HOUR = 60;
+    private static final int DAY = 24 * HOUR;
+    private static final int WEEK = 7 * DAY;
+
+    private static final Map<String, Word> WORDS = new HashMap<>();
+
+    static {
+        dayOffset(0, "сегодня", "today");
+        dayOffset(1, "завтра", "tomorrow");
+        dayOffset(2, "послезавтра");
+
+        weekday(DayOfWeek.MONDAY, "понедельник", "пн", "monday", "mon");
+        weekday(DayOfWeek.TUESDAY, "вторник", "вт", "tuesday", "tue");
+        weekday(DayOfWeek.WEDNESDAY, "среда", "среду", "ср", "wednesday", "wed");
+        weekday(DayOfWeek.THURSDAY, "четверг", "чт", "thursday", "thu");
+        weekday(DayOfWeek.FRIDAY, "пятница", "пятницу", "пт", "friday", "fri");
+        weekday(DayOfWeek.SATURDAY, "суббота", "субботу", "сб", "saturday", "sat");
+        weekday(DayOfWeek.SUNDAY, "воскресенье", "вс", "sunday", "sun");
+
+        unit(MINUTE, "минута", "минуты", "минуту", "минут", "мин", "minute", "minutes", "min", "mins");
+        unit(HOUR, "час", "часа", "часов", "ч", "hour", "hours", "h");
+        unit(DAY, "день", "дня", "дней", "сутки", "суток", "day", "days");
+        unit(WEEK, "неделя", "неделю", "недели", "недель", "week", "weeks");
+        WORDS.put("полчаса", new Word(Kind.UNIT, 30));
+
+        keyword(Kind.IN, "через", "in");
+        keyword(Kind.AT, "в", "во", "at", "on");
+        keyword(Kind.NEXT, "следующий", "следующую", "следующее", "ближайший", "ближайшую", "next");
+
+        keyword(Kind.EVERY, "каждый", "каждую", "каждое", "каждого", "каждые", "every");
+        WORDS.put("ежедневно", new Word(Kind.EVERY, DAY));
+        WORDS.put("daily", new Word(Kind.EVERY, DAY));
+        keyword(Kind.BY, "по");
+        keyword(Kind.AND, "и", "and");
+        keyword(Kind.MONTH, "месяц", "месяца", "month");
+        keyword(Kind.DAY_MARK, "число", "числа");
+        daySet(WORKDAYS, "будни", "будням", "weekdays");
+        daySet(WEEKEND, "выходные", "выходным", "weekends");
+        daySet(1, "понедельникам", "mondays");
+        daySet(1 << 1, "вторникам", "tuesdays");
+        daySet(1 << 2, "средам", "wednesdays");
+        daySet(1 << 3, "четвергам", "thursdays");
+        daySet(1 << 4, "пятницам", "fridays");
+        daySet(1 << 5, "субботам", "saturdays");
+        daySet(1 << 6, "воскресеньям", "sundays");
+    }
+
+    /**
+     * Разбирает ввод пользователя относительно текущего времени в его часовом поясе.
+     */
+    public static DateParseResult parse(String input, ZoneId userTimeZone) {
+        return parse(input, LocalDateTime.now(userTimeZone));
+    }
+
+    public static DateParseResult parse(String input, LocalDateTime now) {
+        if (input == null) {
+            return DateParseResult.failure(FORMAT_HELP);
+        }
+        Parser parser = new Parser(input, now);
+        return parser.run() ? parser.result() : DateParseResult.failure(FORMAT_HELP);
+    }
+
+    public static LocalDateTime parseUserInput(String input, ZoneId userTimeZone) {
+        DateParseResult result = parse(input, userTimeZone);
+        if (!result.isSuccess()) {
+            throw new IllegalArgumentException(result.getError());
         }
+        return result.getDateTime();
+    }
 
-        throw new IllegalArgumentException("Неверный формат даты. Используйте:\n" +
-                "- dd/MM/yy HH:mm (например, 25/12/23 15:30)\n" +
-                "- завтра в HH:mm (например, завтра в 14:32 или 14.32)\n" +
-                "- сегодня, завтра, послезавтра\n" +
-                "- день недели (например, понедельник)\n" +
-                "- через X дней/часов/минут");
+    public static boolean isValidDate(String input, ZoneId userTimeZone) {
+        return parse(input, userTimeZone).isSuccess();
     }
 
-    private static LocalDateTime parseTomorrowWithTime(String input, LocalDateTime now) {
-        Matcher matcher = TIME_PATTERN.matcher(input);
-        if (matcher.find()) {
-            int hour = Integer.parseInt(matcher.group(1));
-            int minute = Integer.parseInt(matcher.group(2));
+    private static void dayOffset(int days, String... words) {
+        for (String word : words) {
+            WORDS.put(word, new Word(Kind.DAY_OFFSET, days));
+        }
+    }
 
-            if (hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59) {
-                return now.plusDays(1)
-                        .withHour(hour)
-                        .withMinute(minute)
-                        .withSecond(0)
-                        .withNano(0);
-            }
+    private static void weekday(DayOfWeek day, String... words) {
+        for (String word : words) {
+            WORDS.put(word, new Word(Kind.WEEKDAY, day.getValue()));
         }
-        throw new IllegalArgumentException("Неверный формат времени. Используйте: HH:mm или HH.mm (например, 14:32 или 14.32)");
     }
 
-    private static DayOfWeek parseDayOfWeek(String input) {
-        switch (input) {
-            case "понедельник": return DayOfWeek.MONDAY;
-            case "вторник": return DayOfWeek.TUESDAY;
-            case "среда": return DayOfWeek.WEDNESDAY;
-            case "четверг": return DayOfWeek.THURSDAY;
-            case "пятница": return DayOfWeek.FRIDAY;
-            case "суббота": return DayOfWeek.SATURDAY;
-            case "воскресенье": return DayOfWeek.SUNDAY;
-            default: return null;
+    private static void unit(int minutes, String... words) {
+        for (String word : words) {
+            WORDS.put(word, new Word(Kind.UNIT, minutes));
         }
     }
 
-    private static LocalDateTime getNextDayOfWeek(LocalDateTime now, DayOfWeek targetDay) {
-        LocalDateTime next = now.with(targetDay);
-        if (next.isBefore(now) || next.equals(now)) {
-            next = next.plusWeeks(1);
+    private static void daySet(int dayMask, String... words) {
+        for (String word : words) {
+            WORDS.put(word, new Word(Kind.DAY_SET, dayMask));
         }
-        return next.withHour(12).withMinute(0);
     }
 
-    private static LocalDateTime parseRelativeDate(String input, LocalDateTime now) {
-        String[] parts = input.split("\\s+");
-        if (parts.length < 3) {
-            throw new IllegalArgumentException("Неверный формат относительной даты");
-        }
-
-        int amount = Integer.parseInt(parts[1]);
-        String unit = parts[2].toLowerCase();
-
-        switch (unit) {
-            case "минут":
-            case "минуты":
-            case "минуту":
-                return now.plusMinutes(amount);
-            case "часов":
-            case "часа":
-            case "час":
-                return now.plusHours(amount);
-            case "дней":
-            case "дня":
-            case "день":
-                return now.plusDays(amount);
-            default:
-                throw new IllegalArgumentException("Неподдерживаемая единица времени: " + unit);
+    private static void keyword(Kind kind, String... words) {
+        for (String word : words) {
+            WORDS.put(word, new Word(kind, 0));
         }
     }
 
-    public static boolean isValidDate(String input, ZoneId userTimeZone) {
-        try {
-            parseUserInput(input, userTimeZone);
-            return true;
-        } catch (Exception e) {
+    private record Word(Kind kind, int value) {
+    }
+
+    /*
+    Токенизатор и грамматика в одном объекте: next() выдаёт очередной токен в поля
+    kind/a/b/c, run() сразу применяет его к накопленному состоянию.
+     */
+    private static final class Parser {
+        private final String input;
+        private final LocalDateTime now;
+        private int pos;
+
+        // Текущий токен: для TIME a=часы b=минуты, для DATE a=день b=месяц c=год (-1 если нет)
+        private Kind kind;
+        private int a;
+        private int b;
+        private int c;
+
+        private LocalDate date;
+        private LocalTime time;
+        private long offsetMinutes;
+        private boolean relative;
+        private int pendingAmount = -1;
+        private boolean afterAt;
+
+        // Повтор: дни недели, ежедневно, еженедельно в текущий день недели или ежемесячно
+        private boolean recurring;
+        private boolean afterBy;
+        private int weekMask;
+        private boolean daily;
+        private boolean weekly;
+        private boolean monthly;
+        private int monthDay = -1;
+
+        Parser(String input, LocalDateTime now) {
+            this.input = input;
+            this.now = now;
+        }
+
+        boolean run() {
+            boolean any = false;
+            while (true) {
+                int status = next();
+                if (status < 0) {
+                    return false;
+                }
+                if (status == 0) {
+                    break;
+                }
+                any = true;
+                if (!apply()) {
+                    return false;
+                }
+            }
+            // Незакрытые "в" и "по" или число без единицы ("через 5") - ошибка
+            return any && !afterAt && !afterBy && pendingAmount < 0;
+        }
+
+        private boolean apply() {
+            switch (kind) {
+                case AT:
+                    if (afterAt) {
+                        return false;
+                    }
+                    afterAt = true;
+                    return true;
+                case NEXT:
+                    // "в следующий понедельник" - то же, что "в понедельник"
+                    return true;
+                case IN:
+                    if (relative || afterAt || date != null || recurring || pendingAmount >= 0) {
+                        return false;
+                    }
+                    relative = true;
+                    return true;
+                case NUMBER:
+                    if (pendingAmount >= 0) {
+                        return false;
+                    }
+                    if (afterAt) {
+                        // "в 9" - час без минут
+                        afterAt = false;
+                        return setTime(a, 0);
+                    }
+                    // Количество для единицы ("через 5 минут") или число месяца ("15 числа");
+                    // если его никто не заберёт, ввод будет отклонён в конце разбора
+                    pendingAmount = a;
+                    return true;
+                case UNIT:
+                    if (recurring && !relative) {
+                        return applyRecurringUnit();
+                    }
+                    if (!relative || afterAt) {
+                        return false;
+                    }
+                    // "через час", "через полчаса" - количество по умолчанию 1
+                    offsetMinutes += (long) (pendingAmount < 0 ? 1 : pendingAmount) * a;
+                    pendingAmount = -1;
+                    return true;
+                case TIME:
+                    afterAt = false;
+                    return setTime(a, b);
+                case DATE:
+                    afterAt = false;
+                    return setDate(resolveDate(a, b, c));
+                case DAY_OFFSET:
+                    if (afterAt) {
+                        return false;
+                    }
+                    return setDate(now.toLocalDate().plusDays(a));
+                case WEEKDAY:
+                    afterAt = false;
+                    if (recurring) {
+                        // "каждый понедельник и четверг"
+                        weekMask |= 1 << (a - 1);
+                        return true;
+                    }
+                    return setDate(now.toLocalDate().with(TemporalAdjusters.next(DayOfWeek.of(a))));
+                case EVERY:
+                    if (recurring || relative || afterAt || afterBy || date != null) {
+                        return false;
+                    }
+                    recurring = true;
+                    // "ежедневно"
+                    daily = a == DAY;
+                    return true;
+                case BY:
+                    if (afterBy || afterAt || relative || date != null) {
+                        return false;
+                    }
+                    afterBy = true;
+                    return true;
+                case DAY_SET:
+                    if (afterAt || relative || date != null) {
+                        return false;
+                    }
+                    afterBy = false;
+                    recurring = true;
+                    weekMask |= a;
+                    return true;
+                case AND:
+                    return recurring && weekMask != 0 && !afterAt;
+                case MONTH:
+                    if (!recurring || afterAt || pendingAmount >= 0) {
+                        return false;
+                    }
+                    monthly = true;
+                    return true;
+                case DAY_MARK:
+                    if (pendingAmount < 1 || pendingAmount > 31 || monthDay >= 0) {
+                        return false;
+                    }
+                    monthDay = pendingAmount;
+                    pendingAmount = -1;
+                    monthly = true;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        // "каждый день", "каждую неделю"; "каждые 2 дня" и "каждый час" не поддерживаются
+        private boolean applyRecurringUnit() {
+            if (afterAt || pendingAmount >= 0) {
+                return false;
+            }
+            if (a == DAY) {
+                daily = true;
+                return true;
+            }
+            if (a == WEEK) {
+                weekly = true;
+                return true;
+            }
             return false;
         }
+
+        private boolean setTime(int hour, int minute) {
+            if (time != null || hour > 23 || minute > 59) {
+                return false;
+            }
+            time = LocalTime.of(hour, minute);
+            return true;
+        }
+
+        private boolean setDate(LocalDate value) {
+            if (value == null || date != null || relative) {
+                return false;
+            }
+            date = value;
+            return true;
+        }
+
+        DateParseResult result() {
+            if (recurring || monthly) {
+                return recurringResult();
+            }
+            if (relative) {
+                if (offsetMinutes == 0) {
+                    return DateParseResult.failure(FORMAT_HELP);
+                }
+                if (time == null) {
+                    return DateParseResult.success(now.plusMinutes(offsetMinutes), true);
+                }
+                // "через 2 дня в 10:00" допустимо только для сдвига на целые дни
+                if (offsetMinutes % DAY != 0) {
+                    return DateParseResult.failure(FORMAT_HELP);
+                }
+                return DateParseResult.success(now.toLocalDate().plusDays(offsetMinutes / DAY).atTime(time), true);
+            }
+            if (date != null) {
+                return DateParseResult.success(date.atTime(time != null ? time : DEFAULT_TIME), time != null);
+            }
+            // Одно время без даты - ближайшее такое время, сегодня или завтра
+            LocalDateTime today = now.toLocalDate().atTime(time);
+            return DateParseResult.success(today.isAfter(now) ? today : today.plusDays(1), true);
+        }
+
+        private DateParseResult recurringResult() {
+            // "15 числа" без "каждого месяца" - не повтор
+            if (!recurring || relative || date != null) {
+                return DateParseResult.failure(FORMAT_HELP);
+            }
+            LocalTime at = time != null ? time : DEFAULT_TIME;
+            RecurrenceRule rule;
+            if (monthly) {
+                if (weekMask != 0 || daily || weekly) {
+                    return DateParseResult.failure(FORMAT_HELP);
+                }
+                rule = RecurrenceRule.monthly(monthDay > 0 ? monthDay : now.getDayOfMonth(), at);
+            } else if (weekMask != 0) {
+                rule = RecurrenceRule.weekly(weekMask, at);
+            } else if (weekly) {
+                rule = RecurrenceRule.weekly(1 << (now.getDayOfWeek().getValue() - 1), at);
+            } else if (daily) {
+                rule = RecurrenceRule.daily(at);
+            } else {
+                return DateParseResult.failure(FORMAT_HELP);
+            }
+            return DateParseResult.recurring(rule.nextLocal(now), time != null, rule);
+        }
+
+        private LocalDate resolveDate(int day, int month, int year) {
+            if (month < 1 || month > 12 || day < 1) {
+                return null;
+            }
+            boolean explicitYear = year >= 0;
+            if (!explicitYear) {
+                year = now.getYear();
+            } else if (year < 100) {
+                year += 2000;
+            }
+            if (year > 9999 || day > YearMonth.of(year, month).lengthOfMonth()) {
+                return null;
+            }
+            LocalDate value = LocalDate.of(year, month, day);
+            // "25.12" без года - ближайшее 25 декабря
+            if (!explicitYear && value.isBefore(now.toLocalDate())) {
+                value = value.plusYears(1);
+                if (day > YearMonth.of(value.getYear(), month).lengthOfMonth()) {
+                    return null;
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Читает следующий токен. Возвращает 1 если токен прочитан, 0 в конце ввода, -1 при ошибке.
+         */
+        private int next() {
+            int length = input.length();
+            while (pos < length && isSeparator(input.charAt(pos))) {
+                pos++;
+            }
+            if (pos >= length) {
+                return 0;
+            }
+            char ch = input.charAt(pos);
+            if (isDigit(ch)) {
+                return readNumeric();
+            }
+            if (Character.isLetter(ch)) {
+                return readWord();
+            }
+            return -1;
+        }
+
+        private int readNumeric() {
+            int first = readNumber();
+            if (first < 0) {
+                return -1;
+            }
+            if (pos + 1 >= input.length() || !isDigit(input.charAt(pos + 1))) {
+                kind = Kind.NUMBER;
+                a = first;
+                return 1;
+            }
+            char delimiter = input.charAt(pos);
+            if (delimiter == ':') {
+                pos++;
+                int minuteStart = pos;
+                int minute = readNumber();
+                if (minute < 0 || pos - minuteStart != 2) {
+                    return -1;
+                }
+                kind = Kind.TIME;
+                a = first;
+                b = minute;
+                return 1;
+            }
+            if (delimiter != '.' && delimiter != '/') {
+                kind = Kind.NUMBER;
+                a = first;
+                return 1;
+            }
+            pos++;
+            int secondStart = pos;
+            int second = readNumber();
+            if (second < 0) {
+                return -1;
+            }
+            int secondDigits = pos - secondStart;
+            if (pos + 1 < input.length() && input.charAt(pos) == delimiter && isDigit(input.charAt(pos + 1))) {
+                pos++;
+                int yearStart = pos;
+                int year = readNumber();
+                int yearDigits = pos - yearStart;
+                if (year < 0 || (yearDigits != 2 && yearDigits != 4)) {
+                    return -1;
+                }
+                kind = Kind.DATE;
+                a = first;
+                b = second;
+                c = year;
+                return 1;
+            }
+            // "14.30" - время, "25.12" и "25/12" - дата без года
+            if (delimiter == '.' && secondDigits == 2 && first <= 23 && second <= 59) {
+                kind = Kind.TIME;
+                a = first;
+                b = second;
+                return 1;
+            }
+            kind = Kind.DATE;
+            a = first;
+            b = second;
+            c = -1;
+            return 1;
+        }
+
+        private int readNumber() {
+            int value = 0;
+            int digits = 0;
+            while (pos < input.length() && isDigit(input.charAt(pos))) {
+                if (++digits > MAX_NUMBER_DIGITS) {
+                    return -1;
+                }
+                value = value * 10 + (input.charAt(pos) - '0');
+                pos++;
+            }
+            return value;
+        }
+
+        private int readWord() {
+            int start = pos;
+            while (pos < input.length() && Character.isLetter(input.charAt(pos))) {
+                pos++;
+            }
+            Word word = WORDS.get(normalizeWord(start, pos));
+            if (word == null) {
+                return -1;
+            }
+            kind = word.kind();
+            a = word.value();
+            return 1;
+        }
+
+        private String normalizeWord(int start, int end) {
+            char[] chars = new char[end - start];
+            for (int i = start; i < end; i++) {
+                char ch = Character.toLowerCase(input.charAt(i));
+                chars[i - start] = ch == 'ё' ? 'е' : ch;
+            }
+            return new String(chars);
+        }
+
+        private static boolean isDigit(char ch) {
+            return ch >= '0' && ch <= '9';
+        }
+
+        private static boolean isSeparator(char ch) {
+            return Character.isWhitespace(ch) || ch == ',';
+        }
     }
 }
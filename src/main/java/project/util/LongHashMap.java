@@ -0,0 +1,169 @@
+package project.util;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/*
+Хэш-таблица с ключами-примитивами long (открытая адресация, линейное пробирование).
+Ключи не упаковываются в Long, удаление сдвигает цепочку назад без "надгробий".
+Не потокобезопасна: синхронизацию обеспечивает вызывающий.
+ */
+public class LongHashMap<V> {
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public LongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        int slot = slotOf(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V previous = (V) values[index];
+        removeAt(index);
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Удаляет все записи, значения которых подходят под условие. Возвращает число удалённых.
+     */
+    @SuppressWarnings("unchecked")
+    public int removeIf(Predicate<V> predicate) {
+        int removed = 0;
+        int index = 0;
+        while (index < values.length) {
+            if (values[index] != null && predicate.test((V) values[index])) {
+                removeAt(index);
+                removed++;
+                // После сдвига в эту ячейку мог попасть другой элемент, проверяем её снова
+                continue;
+            }
+            index++;
+        }
+        // Таблица сжимается, чтобы после наплыва разовых пользователей память возвращалась
+        if (keys.length > MIN_CAPACITY && size < resizeThreshold / 4) {
+            resize(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, size) * 4 - 1) << 1));
+        }
+        return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Entry<V> consumer) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                consumer.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    private int indexOf(long key) {
+        int slot = slotOf(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Удаление со сдвигом: переносим назад элементы, которые иначе стали бы недостижимы
+    private void removeAt(int index) {
+        int gap = index;
+        int slot = (index + 1) & mask;
+        while (values[slot] != null) {
+            int home = slotOf(keys[slot]);
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[gap] = 0;
+        values[gap] = null;
+        size--;
+    }
+
+    private int slotOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slotOf(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public interface Entry<V> {
+        void accept(long key, V value);
+    }
+}
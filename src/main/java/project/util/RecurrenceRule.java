@@ -0,0 +1,268 @@
+package project.util;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+/*
+Правило повторения в виде cron-выражения из пяти полей: минута, час, день месяца, месяц, день недели
+(0 и 7 - воскресенье). Поля поддерживают *, списки, диапазоны и шаг: "0 9 * * 1-5" - по будням в 9:00.
+На напоминании хранится только строка выражения и ближайшее срабатывание.
+
+Каждое поле разворачивается в битовую маску, поэтому следующее срабатывание ищется переходами
+к ближайшему установленному биту: число шагов не зависит от того, сколько раз правило уже сработало.
+Если заданы и день месяца, и день недели, достаточно совпадения любого из них, как в cron.
+ */
+public final class RecurrenceRule {
+    // Правило вроде "0 0 29 2 *" срабатывает раз в несколько лет, дальше не ищем
+    private static final int MAX_YEARS = 8;
+    private static final int WORKDAYS = 0b0111110;
+    private static final int WEEKEND = 0b1000001;
+    private static final long ALL_MONTHS = 0b1111111111110;
+    private static final String[] SHORT_DAY_NAMES = {"пн", "вт", "ср", "чт", "пт", "сб", "вс"};
+
+    private final String expression;
+    private final long minutes;
+    private final long hours;
+    private final long daysOfMonth;
+    private final long months;
+    // Бит 0 - воскресенье, как в cron
+    private final long daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+
+    private RecurrenceRule(String expression, long minutes, long hours, long daysOfMonth, long months, long daysOfWeek,
+                           boolean anyDayOfMonth, boolean anyDayOfWeek) {
+        this.expression = expression;
+        this.minutes = minutes;
+        this.hours = hours;
+        this.daysOfMonth = daysOfMonth;
+        this.months = months;
+        this.daysOfWeek = daysOfWeek;
+        this.anyDayOfMonth = anyDayOfMonth;
+        this.anyDayOfWeek = anyDayOfWeek;
+    }
+
+    public static RecurrenceRule daily(LocalTime time) {
+        return parse(time.getMinute() + " " + time.getHour() + " * * *");
+    }
+
+    // dayMask: бит (DayOfWeek.getValue() - 1), то есть бит 0 - понедельник
+    public static RecurrenceRule weekly(int dayMask, LocalTime time) {
+        StringBuilder days = new StringBuilder();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if ((dayMask & (1 << (day.getValue() - 1))) != 0) {
+                if (!days.isEmpty()) {
+                    days.append(',');
+                }
+                days.append(day.getValue() % 7);
+            }
+        }
+        if (days.isEmpty()) {
+            throw new IllegalArgumentException("Weekly rule needs at least one day");
+        }
+        return parse(time.getMinute() + " " + time.getHour() + " * * " + days);
+    }
+
+    // Месяцы, в которых нет такого дня (31 число), пропускаются
+    public static RecurrenceRule monthly(int dayOfMonth, LocalTime time) {
+        return parse(time.getMinute() + " " + time.getHour() + " " + dayOfMonth + " * *");
+    }
+
+    public static RecurrenceRule parse(String expression) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Recurrence rule must have 5 fields: " + expression);
+        }
+        long daysOfWeek = parseField(fields[4], 0, 7);
+        // 7 - тоже воскресенье
+        if ((daysOfWeek & (1L << 7)) != 0) {
+            daysOfWeek = (daysOfWeek | 1) & ~(1L << 7);
+        }
+        RecurrenceRule rule = new RecurrenceRule(String.join(" ", fields),
+                parseField(fields[0], 0, 59),
+                parseField(fields[1], 0, 23),
+                parseField(fields[2], 1, 31),
+                parseField(fields[3], 1, 12),
+                daysOfWeek,
+                fields[2].equals("*"),
+                fields[4].equals("*"));
+        if (rule.nextLocal(LocalDateTime.of(2000, 1, 1, 0, 0)) == null) {
+            throw new IllegalArgumentException("Recurrence rule never fires: " + expression);
+        }
+        return rule;
+    }
+
+    private static long parseField(String field, int min, int max) {
+        long mask = 0;
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, max);
+                part = part.substring(0, slash);
+            }
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = part.indexOf('-');
+                from = parseNumber(dash >= 0 ? part.substring(0, dash) : part, min, max);
+                to = dash >= 0 ? parseNumber(part.substring(dash + 1), min, max) : (slash >= 0 ? max : from);
+            }
+            if (from > to) {
+                throw new IllegalArgumentException("Invalid range in recurrence rule: " + field);
+            }
+            for (int value = from; value <= to; value += step) {
+                mask |= 1L << value;
+            }
+        }
+        return mask;
+    }
+
+    private static int parseNumber(String value, int min, int max) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number < min || number > max) {
+                throw new IllegalArgumentException("Value " + number + " is out of range " + min + "-" + max);
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in recurrence rule: " + value);
+        }
+    }
+
+    /**
+     * Ближайшее срабатывание строго после after в часовом поясе zone; null, если правило больше не сработает.
+     * Время, попавшее в переход на летнее время, сдвигается вперёд на длину перехода,
+     * при переходе на зимнее правило срабатывает один раз, по первому из двух одинаковых локальных времён.
+     */
+    public Instant next(Instant after, ZoneId zone) {
+        LocalDateTime local = LocalDateTime.ofInstant(after, zone);
+        while (true) {
+            LocalDateTime candidate = nextLocal(local);
+            if (candidate == null) {
+                return null;
+            }
+            Instant instant = ZonedDateTime.ofLocal(candidate, zone, null).toInstant();
+            if (instant.isAfter(after)) {
+                return instant;
+            }
+            // Повторившийся при переходе на зимнее время час: первое такое время уже прошло
+            local = candidate;
+        }
+    }
+
+    // Ближайшее локальное время строго после after с точностью до минуты
+    public LocalDateTime nextLocal(LocalDateTime after) {
+        LocalDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        int lastYear = time.getYear() + MAX_YEARS;
+        while (time.getYear() <= lastYear) {
+            int month = nextBit(months, time.getMonthValue());
+            if (month != time.getMonthValue()) {
+                time = month < 0
+                        ? LocalDateTime.of(time.getYear() + 1, 1, 1, 0, 0)
+                        : LocalDateTime.of(time.getYear(), month, 1, 0, 0);
+                continue;
+            }
+            LocalDate date = time.toLocalDate();
+            if (anyDayOfWeek) {
+                // Без дня недели сразу переходим к ближайшему подходящему числу
+                int day = nextBit(daysOfMonth, date.getDayOfMonth());
+                if (day < 0 || day > date.lengthOfMonth()) {
+                    time = date.withDayOfMonth(1).plusMonths(1).atStartOfDay();
+                    continue;
+                }
+                if (day != date.getDayOfMonth()) {
+                    time = date.withDayOfMonth(day).atStartOfDay();
+                    continue;
+                }
+            } else if (!matchesDay(date)) {
+                time = date.plusDays(1).atStartOfDay();
+                continue;
+            }
+            int hour = nextBit(hours, time.getHour());
+            if (hour < 0) {
+                time = date.plusDays(1).atStartOfDay();
+                continue;
+            }
+            if (hour != time.getHour()) {
+                time = date.atTime(hour, 0);
+            }
+            int minute = nextBit(minutes, time.getMinute());
+            if (minute < 0) {
+                time = time.withMinute(0).plusHours(1);
+                continue;
+            }
+            return time.withMinute(minute);
+        }
+        return null;
+    }
+
+    private boolean matchesDay(LocalDate date) {
+        boolean dayOfWeek = (daysOfWeek & (1L << (date.getDayOfWeek().getValue() % 7))) != 0;
+        if (anyDayOfMonth) {
+            return dayOfWeek;
+        }
+        return dayOfWeek || (daysOfMonth & (1L << date.getDayOfMonth())) != 0;
+    }
+
+    // Номер ближайшего установленного бита, не меньшего from, или -1
+    private static int nextBit(long mask, int from) {
+        long rest = mask & (-1L << from);
+        return rest == 0 ? -1 : Long.numberOfTrailingZeros(rest);
+    }
+
+    // Описание для пользователя; для нестандартных выражений - само выражение
+    public String describe() {
+        if (Long.bitCount(minutes) != 1 || Long.bitCount(hours) != 1 || months != ALL_MONTHS) {
+            return "по расписанию " + expression;
+        }
+        String at = String.format(" в %02d:%02d", Long.numberOfTrailingZeros(hours), Long.numberOfTrailingZeros(minutes));
+        if (anyDayOfMonth && anyDayOfWeek) {
+            return "каждый день" + at;
+        }
+        if (anyDayOfMonth) {
+            if (daysOfWeek == WORKDAYS) {
+                return "по будням" + at;
+            }
+            if (daysOfWeek == WEEKEND) {
+                return "по выходным" + at;
+            }
+            StringBuilder days = new StringBuilder("по дням недели");
+            for (DayOfWeek day : DayOfWeek.values()) {
+                if ((daysOfWeek & (1L << (day.getValue() % 7))) != 0) {
+                    days.append(' ').append(SHORT_DAY_NAMES[day.getValue() - 1]);
+                }
+            }
+            return days + at;
+        }
+        if (anyDayOfWeek && Long.bitCount(daysOfMonth) == 1) {
+            return "каждое " + Long.numberOfTrailingZeros(daysOfMonth) + " число" + at;
+        }
+        return "по расписанию " + expression;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof RecurrenceRule rule && rule.expression.equals(expression);
+    }
+
+    @Override
+    public int hashCode() {
+        return expression.hashCode();
+    }
+
+    // Компактная форма для хранения: само cron-выражение
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
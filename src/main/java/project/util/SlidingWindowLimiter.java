@@ -0,0 +1,121 @@
+package project.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Ограничение частоты по ключу (id пользователя): не больше limit событий за скользящее окно windowMillis.
+Окно приближается двумя соседними фиксированными: счётчик предыдущего учитывается с весом
+той доли, что ещё попадает в скользящее окно. На ключ хранится несколько чисел, ключи не упаковываются.
+Давно не активные ключи вычищаются по ходу работы, когда сегмент вырастает вдвое.
+ */
+public class SlidingWindowLimiter {
+    private static final int SEGMENTS = 16;
+    private static final int MIN_SWEEP_SIZE = 1024;
+
+    private final int limit;
+    private final long windowMillis;
+    private final Segment[] segments;
+
+    public SlidingWindowLimiter(int limit, long windowMillis) {
+        if (limit < 1 || windowMillis < 1) {
+            throw new IllegalArgumentException("Limit and window must be positive");
+        }
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Учитывает событие и возвращает true, если лимит не превышен. Отклонённые события не считаются,
+     * поэтому пользователь, переставший флудить, снова проходит через одно окно.
+     */
+    public boolean tryAcquire(long key, long nowMillis) {
+        Segment segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            Window window = segment.window(key, nowMillis, this);
+            double previousWeight = 1 - (double) (nowMillis - window.start) / windowMillis;
+            if (window.previous * previousWeight + window.current >= limit) {
+                return false;
+            }
+            window.current++;
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // true не чаще раза за окно: чтобы отвечать на отклонённые события, не отвечая на каждое
+    public boolean tryNotify(long key, long nowMillis) {
+        Segment segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            Window window = segment.window(key, nowMillis, this);
+            if (window.notifiedStart == window.start) {
+                return false;
+            }
+            window.notifiedStart = window.start;
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.windows.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[(int) (key ^ (key >>> 32)) & (SEGMENTS - 1)];
+    }
+
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LongHashMap<Window> windows = new LongHashMap<>(MIN_SWEEP_SIZE);
+        private int sweepAt = MIN_SWEEP_SIZE;
+
+        // Окно ключа, сдвинутое к текущему моменту; вызывается под блокировкой сегмента
+        private Window window(long key, long nowMillis, SlidingWindowLimiter limiter) {
+            long windowMillis = limiter.windowMillis;
+            long start = nowMillis - Math.floorMod(nowMillis, windowMillis);
+            Window window = windows.get(key);
+            if (window == null) {
+                if (windows.size() >= sweepAt) {
+                    // За два окна ключ полностью выпадает из скользящего окна
+                    windows.removeIf(idle -> idle.start < start - windowMillis);
+                    sweepAt = Math.max(MIN_SWEEP_SIZE, windows.size() * 2);
+                }
+                window = new Window(start);
+                windows.put(key, window);
+            } else if (window.start != start) {
+                window.previous = window.start == start - windowMillis ? window.current : 0;
+                window.current = 0;
+                window.start = start;
+            }
+            return window;
+        }
+    }
+
+    private static final class Window {
+        private long start;
+        private long notifiedStart = -1;
+        private int current;
+        private int previous;
+
+        private Window(long start) {
+            this.start = start;
+        }
+    }
+}
@@ -1,192 +1,510 @@
 package project.util;
 
+import project.config.ConfigLoader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
 import java.time.ZoneId;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+/*
+Поиск часового пояса по названию города.
+Справочник загружается при старте из cities.tsv (или полной выгрузки GeoNames, см. timezone.cities.file)
+и индексируется: точные названия в хэш-таблице, отсортированный массив для поиска по префиксу
+и триграммы для опечаток. Кандидаты ранжируются по расстоянию Левенштейна и населению.
+ */
 public class TimeZoneFinder {
-    private static final Map<String, String> CITY_TIMEZONES = new HashMap<>();
-    private static final Map<String, List<String>> CITY_ALIASES = new HashMap<>();
     private static final int MIN_CITY_LENGTH = 3;
+    private static final int MAX_SUGGESTIONS = 5;
+    private static final int MAX_PREFIX_CANDIDATES = 32;
+    private static final int MAX_FUZZY_CANDIDATES = 64;
+    private static final int MAX_DISTANCE = 3;
+    private static final String BUNDLED_CITIES = "/cities.tsv";
+    // Слова, которые пользователи пишут перед названием: "г. Москва", "город Томск"
+    private static final Set<String> SKIP_WORDS = Set.of("г", "гор", "город", "city");
+
+    private static final CityIndex INDEX = loadIndex();
 
-    static {
-        // Moscow Time (UTC+3)
-        addCity("москва", "Europe/Moscow", "мск", "moscow");
-        addCity("санкт-петербург", "Europe/Moscow", "питер", "спб", "санкт петербург", "saint petersburg");
-        addCity("нижний новгород", "Europe/Moscow", "нижний");
-        addCity("ростов-на-дону", "Europe/Moscow", "ростов на дону", "ростов");
-        addCity("казань", "Europe/Moscow");
-        addCity("воронеж", "Europe/Moscow");
-        addCity("краснодар", "Europe/Moscow");
-        addCity("сочи", "Europe/Moscow");
-        addCity("калининград", "Europe/Kaliningrad");
-        addCity("мурманск", "Europe/Moscow");
-        addCity("архангельск", "Europe/Moscow");
-        addCity("ярославль", "Europe/Moscow");
-        addCity("тверь", "Europe/Moscow");
-        addCity("тула", "Europe/Moscow");
-        addCity("рязань", "Europe/Moscow");
-        addCity("саратов", "Europe/Saratov");
-        addCity("волгоград", "Europe/Volgograd");
-        addCity("астрахань", "Europe/Astrakhan");
-        addCity("севастополь", "Europe/Moscow");
-        addCity("симферополь", "Europe/Moscow");
-        addCity("ялта", "Europe/Moscow");
-        
-        // Samara Time (UTC+4)
-        addCity("самара", "Europe/Samara");
-        addCity("ижевск", "Europe/Samara");
-        addCity("ульяновск", "Europe/Samara");
-        addCity("тольятти", "Europe/Samara");
-        addCity("оренбург", "Asia/Yekaterinburg");
-        
-        // Yekaterinburg Time (UTC+5)
-        addCity("екатеринбург", "Asia/Yekaterinburg", "екб");
-        addCity("пермь", "Asia/Yekaterinburg");
-        addCity("уфа", "Asia/Yekaterinburg");
-        addCity("челябинск", "Asia/Yekaterinburg");
-        addCity("тюмень", "Asia/Yekaterinburg");
-        addCity("сургут", "Asia/Yekaterinburg");
-        addCity("нижневартовск", "Asia/Yekaterinburg");
-        addCity("курган", "Asia/Yekaterinburg");
-        
-        // Omsk Time (UTC+6)
-        addCity("омск", "Asia/Omsk");
-        addCity("новый уренгой", "Asia/Yekaterinburg");
-        
-        // Novosibirsk Time (UTC+7)
-        addCity("новосибирск", "Asia/Novosibirsk", "нск");
-        addCity("томск", "Asia/Tomsk");
-        addCity("кемерово", "Asia/Novokuznetsk");
-        addCity("барнаул", "Asia/Barnaul");
-        addCity("новокузнецк", "Asia/Novokuznetsk");
-        addCity("красноярск", "Asia/Krasnoyarsk");
-        
-        // Irkutsk Time (UTC+8)
-        addCity("иркутск", "Asia/Irkutsk");
-        addCity("улан-удэ", "Asia/Irkutsk", "улан удэ");
-        addCity("чита", "Asia/Chita");
-        addCity("братск", "Asia/Irkutsk");
-        
-        // Yakutsk Time (UTC+9)
-        addCity("якутск", "Asia/Yakutsk");
-        addCity("благовещенск", "Asia/Yakutsk");
-        addCity("нерюнгри", "Asia/Yakutsk");
-        
-        // Vladivostok Time (UTC+10)
-        addCity("владивосток", "Asia/Vladivostok");
-        addCity("хабаровск", "Asia/Vladivostok");
-        addCity("южно-сахалинск", "Asia/Sakhalin", "южно сахалинск");
-        addCity("находка", "Asia/Vladivostok");
-        addCity("уссурийск", "Asia/Vladivostok");
-        
-        // Magadan Time (UTC+11)
-        addCity("магадан", "Asia/Magadan");
-        
-        // Kamchatka Time (UTC+12)
-        addCity("петропавловск-камчатский", "Asia/Kamchatka", "петропавловск камчатский");
+    // Справочник строится при загрузке класса; вызов при старте избавляет первого пользователя от ожидания
+    public static int preload() {
+        return INDEX.cityNames.length;
     }
 
-    private static void addCity(String mainName, String timezone, String... aliases) {
-        CITY_TIMEZONES.put(mainName, timezone);
-        if (aliases.length > 0) {
-            CITY_ALIASES.put(mainName, Arrays.asList(aliases));
-            for (String alias : aliases) {
-                CITY_TIMEZONES.put(alias, timezone);
-            }
-        }
+    /**
+     * Один поиск: лучший город (если он найден уверенно) и до пяти похожих названий.
+     */
+    public static CityMatch lookup(String cityName) {
+        return INDEX.lookup(normalizeCity(cityName));
     }
 
     public static ZoneId findTimeZoneByCity(String cityName) {
-        if (!isValidCityInput(cityName)) {
-            return null;
+        return lookup(cityName).getTimeZone();
+    }
+
+    public static boolean isValidCity(String cityName) {
+        return lookup(cityName).isFound();
+    }
+
+    public static String getSuggestedCities(String partialCity) {
+        return formatSuggestions(lookup(partialCity));
+    }
+
+    public static String formatSuggestions(CityMatch match) {
+        if (!match.isValidInput()) {
+            return "Пожалуйста, введите название города (минимум " + MIN_CITY_LENGTH + " буквы).";
+        }
+        if (match.getSuggestions().isEmpty()) {
+            return "Извините, не могу найти указанный город. " +
+                    "Пожалуйста, попробуйте еще раз или введите ближайший крупный город.";
         }
+        StringBuilder suggestions = new StringBuilder("Возможно, вы имели в виду один из этих городов:\n");
+        for (String city : match.getSuggestions()) {
+            suggestions.append("• ").append(city).append("\n");
+        }
+        return suggestions.toString();
+    }
 
-        String normalizedCity = normalizeCity(cityName);
-        String timezone = CITY_TIMEZONES.get(normalizedCity);
-        
-        if (timezone != null) {
-            return ZoneId.of(timezone);
+    // Нижний регистр, ё -> е, любые не-буквы (дефисы, точки, цифры) схлопываются в один пробел
+    static String normalizeCity(String city) {
+        if (city == null) {
+            return "";
         }
-        
-        // Если точное совпадение не найдено, ищем по частичному совпадению
-        for (Map.Entry<String, String> entry : CITY_TIMEZONES.entrySet()) {
-            if (entry.getKey().contains(normalizedCity) || normalizedCity.contains(entry.getKey())) {
-                return ZoneId.of(entry.getValue());
+        StringBuilder normalized = new StringBuilder(city.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < city.length(); i++) {
+            char ch = Character.toLowerCase(city.charAt(i));
+            if (!Character.isLetter(ch)) {
+                pendingSpace = normalized.length() > 0;
+                continue;
             }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            normalized.append(ch == 'ё' ? 'е' : ch);
+        }
+        int space = normalized.indexOf(" ");
+        if (space > 0 && SKIP_WORDS.contains(normalized.substring(0, space))) {
+            return normalized.substring(space + 1);
         }
-        
-        return null; // Возвращаем null если город не найден
+        return normalized.toString();
     }
 
-    public static boolean isValidCity(String cityName) {
-        if (!isValidCityInput(cityName)) {
-            return false;
+    private static CityIndex loadIndex() {
+        String citiesFile = ConfigLoader.getInstance().getCitiesFile();
+        String source = citiesFile != null ? citiesFile : BUNDLED_CITIES;
+        CityIndex.Builder builder = new CityIndex.Builder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(openCities(citiesFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && line.charAt(0) != '#') {
+                    builder.addLine(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading city list from " + source, e);
         }
+        CityIndex index = builder.build();
+        System.out.println("🌍 Loaded " + index.cityNames.length + " cities (" + index.keys.length + " names) from " + source);
+        return index;
+    }
 
-        String normalizedCity = normalizeCity(cityName);
-        
-        // Проверяем точное совпадение
-        if (CITY_TIMEZONES.containsKey(normalizedCity)) {
-            return true;
+    private static InputStream openCities(String citiesFile) throws IOException {
+        if (citiesFile != null) {
+            return Files.newInputStream(Paths.get(citiesFile));
+        }
+        InputStream input = TimeZoneFinder.class.getResourceAsStream(BUNDLED_CITIES);
+        if (input == null) {
+            throw new IOException("Unable to find " + BUNDLED_CITIES);
         }
-        
-        // Проверяем частичное совпадение только если длина города достаточная
-        if (normalizedCity.length() >= MIN_CITY_LENGTH) {
-            for (String city : CITY_TIMEZONES.keySet()) {
-                if (city.contains(normalizedCity) || normalizedCity.contains(city)) {
-                    return true;
+        return input;
+    }
+
+    // Ограниченное расстояние Дамерау-Левенштейна: при превышении limit возвращает limit + 1
+    static int distance(String a, String b, int limit) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > limit) {
+            return limit + 1;
+        }
+        int[] beforePrevious = new int[m + 1];
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            current[0] = i;
+            int rowMin = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                char cb = b.charAt(j - 1);
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + (ca == cb ? 0 : 1));
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    value = Math.min(value, beforePrevious[j - 2] + 1);
                 }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
             }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
         }
-        
-        return false;
+        return Math.min(previous[m], limit + 1);
+    }
+
+    // Допустимое число опечаток растёт с длиной названия
+    private static int allowedDistance(int length) {
+        return length <= 4 ? 1 : length <= 8 ? 2 : MAX_DISTANCE;
     }
 
-    private static boolean isValidCityInput(String cityName) {
-        if (cityName == null || cityName.trim().isEmpty()) {
-            return false;
+    private static long[] trigrams(String key) {
+        long[] grams = new long[key.length()];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) charAt(key, i - 1) << 32) | ((long) charAt(key, i) << 16) | charAt(key, i + 1);
         }
-        
-        String normalized = normalizeCity(cityName);
-        if (normalized.length() < MIN_CITY_LENGTH) {
-            return false;
+        Arrays.sort(grams);
+        int unique = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[unique++] = grams[i];
+            }
         }
+        return unique == grams.length ? grams : Arrays.copyOf(grams, unique);
+    }
 
-        // Проверяем, что строка содержит хотя бы одну букву
-        return normalized.matches(".*[а-яa-z].*");
+    // Название дополняется пробелами по краям, чтобы начало и конец слова давали свои триграммы
+    private static char charAt(String key, int index) {
+        return index < 0 || index >= key.length() ? ' ' : key.charAt(index);
     }
 
-    private static String normalizeCity(String city) {
-        return city.trim()
-                  .toLowerCase()
-                  .replace("ё", "е")
-                  .replaceAll("[^а-яa-z\\s-]", "")
-                  .replaceAll("\\s+", " ")
-                  .trim();
+    private static final class CityIndex {
+        private final String[] cityNames;
+        private final ZoneId[] cityZones;
+        private final long[] cityPopulation;
+        private final String[] keys;
+        private final int[] keyCity;
+        private final Map<String, Integer> exact;
+        private final int[] sortedKeys;
+        private final LongHashMap<int[]> postings;
+        // Счётчики совпавших триграмм переиспользуются между поисками, а не выделяются на каждый
+        private final ConcurrentLinkedQueue<int[]> counterPool = new ConcurrentLinkedQueue<>();
+
+        private CityIndex(Builder builder) {
+            this.cityNames = builder.cityNames.toArray(new String[0]);
+            this.cityZones = builder.cityZones.toArray(new ZoneId[0]);
+            this.cityPopulation = builder.cityPopulation.stream().mapToLong(Long::longValue).toArray();
+            this.keys = builder.keys.toArray(new String[0]);
+            this.keyCity = builder.keyCity.stream().mapToInt(Integer::intValue).toArray();
+            this.exact = builder.exact;
+            this.sortedKeys = builder.exact.values().stream()
+                    .sorted((left, right) -> keys[left].compareTo(keys[right]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+
+            LongHashMap<List<Integer>> grouped = new LongHashMap<>(keys.length * 4);
+            for (int keyId = 0; keyId < keys.length; keyId++) {
+                for (long gram : trigrams(keys[keyId])) {
+                    List<Integer> posting = grouped.get(gram);
+                    if (posting == null) {
+                        posting = new ArrayList<>(4);
+                        grouped.put(gram, posting);
+                    }
+                    posting.add(keyId);
+                }
+            }
+            this.postings = new LongHashMap<>(grouped.size());
+            grouped.forEach((gram, posting) -> postings.put(gram, posting.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        CityMatch lookup(String query) {
+            if (query.length() < MIN_CITY_LENGTH) {
+                return new CityMatch(false, null, null, List.of());
+            }
+            Candidates candidates = new Candidates();
+
+            Integer exactKey = exact.get(query);
+            if (exactKey != null) {
+                candidates.add(keyCity[exactKey], 0, true);
+            }
+            collectPrefix(query, candidates);
+            collectFuzzy(query, candidates);
+
+            int[] order = candidates.rank(cityPopulation);
+            List<String> suggestions = new ArrayList<>(MAX_SUGGESTIONS);
+            for (int i = 0; i < order.length && suggestions.size() < MAX_SUGGESTIONS; i++) {
+                suggestions.add(cityNames[candidates.city[order[i]]]);
+            }
+            suggestions = Collections.unmodifiableList(suggestions);
+
+            int city = exactKey != null ? keyCity[exactKey] : -1;
+            if (city < 0) {
+                int allowed = allowedDistance(query.length());
+                for (int index : order) {
+                    if (candidates.distance[index] <= allowed) {
+                        city = candidates.city[index];
+                        break;
+                    }
+                }
+            }
+            if (city < 0) {
+                // "екатер" - начало названия ровно одного города
+                city = candidates.uniquePrefixCity();
+            }
+            if (city < 0) {
+                return new CityMatch(true, null, null, suggestions);
+            }
+            return new CityMatch(true, cityNames[city], cityZones[city], suggestions);
+        }
+
+        private void collectPrefix(String query, Candidates candidates) {
+            int low = 0;
+            int high = sortedKeys.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[sortedKeys[middle]].compareTo(query) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            for (int i = low, taken = 0; i < sortedKeys.length && taken < MAX_PREFIX_CANDIDATES; i++, taken++) {
+                String key = keys[sortedKeys[i]];
+                if (!key.startsWith(query)) {
+                    break;
+                }
+                candidates.add(keyCity[sortedKeys[i]], distance(query, key, MAX_DISTANCE), true);
+            }
+        }
+
+        private void collectFuzzy(String query, Candidates candidates) {
+            long[] grams = trigrams(query);
+            int[] counts = counterPool.poll();
+            if (counts == null) {
+                counts = new int[keys.length];
+            }
+            int[] touched = new int[64];
+            int touchedCount = 0;
+            for (long gram : grams) {
+                int[] posting = postings.get(gram);
+                if (posting == null) {
+                    continue;
+                }
+                for (int keyId : posting) {
+                    if (counts[keyId]++ == 0) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = keyId;
+                    }
+                }
+            }
+
+            // Кандидаты упаковываются в long (меньше совпадений - больше ключ), чтобы сортировать без объектов
+            int threshold = Math.max(1, grams.length / 3);
+            long[] ranked = new long[touchedCount];
+            int rankedCount = 0;
+            for (int i = 0; i < touchedCount; i++) {
+                int keyId = touched[i];
+                if (counts[keyId] >= threshold) {
+                    ranked[rankedCount++] = ((long) (grams.length - counts[keyId]) << 32) | keyId;
+                }
+                counts[keyId] = 0;
+            }
+            counterPool.offer(counts);
+
+            Arrays.sort(ranked, 0, rankedCount);
+            for (int i = 0; i < rankedCount && i < MAX_FUZZY_CANDIDATES; i++) {
+                int keyId = (int) ranked[i];
+                // Далёкие по расстоянию, но похожие по триграммам названия остаются в подсказках
+                candidates.add(keyCity[keyId], distance(query, keys[keyId], MAX_DISTANCE), false);
+            }
+        }
+
+        private static final class Builder {
+            private final List<String> cityNames = new ArrayList<>();
+            private final List<ZoneId> cityZones = new ArrayList<>();
+            private final List<Long> cityPopulation = new ArrayList<>();
+            private final List<String> keys = new ArrayList<>();
+            private final List<Integer> keyCity = new ArrayList<>();
+            private final Map<String, Integer> exact = new HashMap<>();
+            private final Map<String, ZoneId> zones = new HashMap<>();
+
+            // Поддерживаются два формата: полный GeoNames (19 колонок) и компактный cities.tsv (4 колонки)
+            void addLine(String line) {
+                String[] columns = line.split("\t", -1);
+                String name;
+                String asciiName = "";
+                String alternateNames;
+                String population;
+                String timezone;
+                if (columns.length >= 18) {
+                    name = columns[1];
+                    asciiName = columns[2];
+                    alternateNames = columns[3];
+                    population = columns[14];
+                    timezone = columns[17];
+                } else if (columns.length >= 4) {
+                    name = columns[0];
+                    alternateNames = columns[1];
+                    population = columns[2];
+                    timezone = columns[3];
+                } else {
+                    return;
+                }
+
+                ZoneId zone = zoneOf(timezone);
+                if (zone == null || name.isEmpty()) {
+                    return;
+                }
+                int city = cityNames.size();
+                cityNames.add(name);
+                cityZones.add(zone);
+                cityPopulation.add(parsePopulation(population));
+
+                addKey(name, city);
+                addKey(asciiName, city);
+                if (!alternateNames.isEmpty()) {
+                    for (String alternate : alternateNames.split(",")) {
+                        addKey(alternate, city);
+                    }
+                }
+            }
+
+            // Одно название у нескольких городов: по точному совпадению отдаём самый крупный
+            private void addKey(String name, int city) {
+                if (!isIndexable(name)) {
+                    return;
+                }
+                String key = normalizeCity(name);
+                if (key.length() < 2) {
+                    return;
+                }
+                Integer keyId = exact.get(key);
+                if (keyId == null) {
+                    exact.put(key, keys.size());
+                    keys.add(key);
+                    keyCity.add(city);
+                } else if (cityPopulation.get(city) > cityPopulation.get(keyCity.get(keyId))) {
+                    keyCity.set(keyId, city);
+                }
+            }
+
+            // Альтернативные названия GeoNames на других алфавитах пользователи не вводят
+            private static boolean isIndexable(String name) {
+                for (int i = 0; i < name.length(); i++) {
+                    char ch = name.charAt(i);
+                    if (Character.isLetter(ch)) {
+                        Character.UnicodeScript script = Character.UnicodeScript.of(ch);
+                        if (script != Character.UnicodeScript.CYRILLIC && script != Character.UnicodeScript.LATIN) {
+                            return false;
+                        }
+                    }
+                }
+                return !name.isEmpty();
+            }
+
+            private ZoneId zoneOf(String timezone) {
+                if (timezone.isEmpty()) {
+                    return null;
+                }
+                return zones.computeIfAbsent(timezone, id -> {
+                    try {
+                        return ZoneId.of(id);
+                    } catch (DateTimeException e) {
+                        return null;
+                    }
+                });
+            }
+
+            private static long parsePopulation(String population) {
+                try {
+                    return population.isEmpty() ? 0 : Long.parseLong(population);
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+
+            CityIndex build() {
+                return new CityIndex(this);
+            }
+        }
     }
 
-    public static String getSuggestedCities(String partialCity) {
-        if (!isValidCityInput(partialCity)) {
-            return "Пожалуйста, введите название города (минимум " + MIN_CITY_LENGTH + " буквы).";
+    /*
+    Кандидаты одного поиска, по одной записи на город с лучшим найденным расстоянием.
+     */
+    private static final class Candidates {
+        private int[] city = new int[16];
+        private int[] distance = new int[16];
+        private boolean[] prefix = new boolean[16];
+        private int size;
+
+        void add(int cityId, int cityDistance, boolean prefixMatch) {
+            for (int i = 0; i < size; i++) {
+                if (city[i] == cityId) {
+                    distance[i] = Math.min(distance[i], cityDistance);
+                    prefix[i] |= prefixMatch;
+                    return;
+                }
+            }
+            if (size == city.length) {
+                city = Arrays.copyOf(city, size * 2);
+                distance = Arrays.copyOf(distance, size * 2);
+                prefix = Arrays.copyOf(prefix, size * 2);
+            }
+            city[size] = cityId;
+            distance[size] = cityDistance;
+            prefix[size] = prefixMatch;
+            size++;
         }
 
-        StringBuilder suggestions = new StringBuilder("Возможно, вы имели в виду один из этих городов:\n");
-        int count = 0;
-        String normalized = normalizeCity(partialCity);
-        
-        for (String city : CITY_TIMEZONES.keySet()) {
-            if (city.contains(normalized) || normalized.contains(city)) {
-                suggestions.append("• ").append(city).append("\n");
-                count++;
-                if (count >= 5) break; // Показываем максимум 5 предложений
-            }
-        }
-        
-        return count > 0 ? suggestions.toString() : 
-            "Извините, не могу найти указанный город. " +
-                    "Пожалуйста, попробуйте еще раз или введите ближайший крупный город.";
+        // Город, если все совпадения по префиксу ведут к нему одному, иначе -1
+        int uniquePrefixCity() {
+            int found = -1;
+            for (int i = 0; i < size; i++) {
+                if (prefix[i]) {
+                    if (found >= 0) {
+                        return -1;
+                    }
+                    found = city[i];
+                }
+            }
+            return found;
+        }
+
+        // Порядок: расстояние (совпадение по префиксу считается одной опечаткой), затем население
+        int[] rank(long[] population) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (left, right) -> {
+                int byDistance = Integer.compare(rankDistance(left), rankDistance(right));
+                return byDistance != 0 ? byDistance : Long.compare(population[city[right]], population[city[left]]);
+            });
+            return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+        }
+
+        private int rankDistance(int index) {
+            return prefix[index] ? Math.min(distance[index], 1) : distance[index];
+        }
     }
 }
@@ -0,0 +1,216 @@
+package project.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Иерархическое колесо таймеров: секунды -> минуты -> часы -> дни.
+Вставка и отмена выполняются за O(1), на каждый тик обрабатывается один слот.
+Задачи дальше горизонта колеса не принимаются (schedule возвращает null),
+их нужно подгружать заново, когда они войдут в горизонт.
+ */
+public class TimingWheel<T> {
+    private static final long[] TICKS = {
+            TimeUnit.SECONDS.toMillis(1),
+            TimeUnit.MINUTES.toMillis(1),
+            TimeUnit.HOURS.toMillis(1),
+            TimeUnit.DAYS.toMillis(1)
+    };
+    private static final int[] SIZES = {60, 60, 24, 0};
+
+    private final Bucket<T>[][] levels;
+    private final long[] currentTimes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int days, long startMillis) {
+        if (days < 1) {
+            throw new IllegalArgumentException("Timing wheel must cover at least one day");
+        }
+        levels = new Bucket[TICKS.length][];
+        currentTimes = new long[TICKS.length];
+        for (int level = 0; level < TICKS.length; level++) {
+            int slots = SIZES[level] > 0 ? SIZES[level] : days;
+            levels[level] = new Bucket[slots];
+            for (int slot = 0; slot < slots; slot++) {
+                levels[level][slot] = new Bucket<>();
+            }
+            currentTimes[level] = startMillis - Math.floorMod(startMillis, TICKS[level]);
+        }
+    }
+
+    /**
+     * Ставит задачу в колесо. Возвращает null, если срок дальше горизонта колеса.
+     * Если срок уже наступил, задача не ставится и помечается как просроченная.
+     */
+    public Timeout<T> schedule(T payload, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(payload, deadlineMillis);
+        lock.lock();
+        try {
+            if (!place(timeout)) {
+                return timeout.expired ? timeout : null;
+            }
+            size++;
+            return timeout;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean cancel(Timeout<T> timeout) {
+        lock.lock();
+        try {
+            if (timeout.bucket == null) {
+                return false;
+            }
+            timeout.bucket.remove(timeout);
+            size--;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Продвигает колесо до указанного момента и возвращает задачи, срок которых наступил.
+     */
+    public List<T> advanceTo(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            while (currentTimes[0] + TICKS[0] <= nowMillis) {
+                tick(currentTimes[0] + TICKS[0], expired);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return expired;
+    }
+
+    public long getHorizonMillis() {
+        int top = TICKS.length - 1;
+        return currentTimes[top] + TICKS[top] * levels[top].length;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void tick(long time, List<T> expired) {
+        for (int level = 0; level < TICKS.length; level++) {
+            currentTimes[level] = time - Math.floorMod(time, TICKS[level]);
+        }
+        // Сначала каскадируем старшие уровни, чтобы задачи успели опуститься до секундного слота
+        for (int level = TICKS.length - 1; level > 0; level--) {
+            if (Math.floorMod(time, TICKS[level]) == 0) {
+                Bucket<T> bucket = levels[level][slotOf(level, time)];
+                Timeout<T> timeout;
+                while ((timeout = bucket.poll()) != null) {
+                    size--;
+                    if (place(timeout)) {
+                        size++;
+                    } else if (timeout.expired) {
+                        expired.add(timeout.payload);
+                    }
+                }
+            }
+        }
+        Bucket<T> bucket = levels[0][slotOf(0, time)];
+        Timeout<T> timeout;
+        while ((timeout = bucket.poll()) != null) {
+            size--;
+            timeout.expired = true;
+            expired.add(timeout.payload);
+        }
+    }
+
+    private boolean place(Timeout<T> timeout) {
+        if (timeout.deadline < currentTimes[0] + TICKS[0]) {
+            timeout.expired = true;
+            return false;
+        }
+        for (int level = 0; level < TICKS.length; level++) {
+            long interval = TICKS[level] * levels[level].length;
+            if (timeout.deadline < currentTimes[level] + interval) {
+                levels[level][slotOf(level, timeout.deadline)].add(timeout);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int slotOf(int level, long time) {
+        return (int) Math.floorMod(Math.floorDiv(time, TICKS[level]), (long) levels[level].length);
+    }
+
+    public static final class Timeout<T> {
+        private final T payload;
+        private final long deadline;
+        private Bucket<T> bucket;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private boolean expired;
+
+        private Timeout(T payload, long deadline) {
+            this.payload = payload;
+            this.deadline = deadline;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isExpired() {
+            return expired;
+        }
+    }
+
+    // Двусвязный список без аллокаций узлов: ссылки хранятся прямо в Timeout
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+
+        void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        Timeout<T> poll() {
+            Timeout<T> timeout = head;
+            if (timeout != null) {
+                remove(timeout);
+            }
+            return timeout;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package project.service;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import project.model.ScheduledReminder;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeliveryPlannerTest {
+    private static final long TOLERANCE_MILLIS = 60_000;
+    // Начало минуты, на которую приходится всплеск
+    private static final long BURST_MINUTE = DeliveryPlanner.minuteOf(1_800_000_000_000L);
+
+    @Test
+    void stagedReminderFetchedAgainIsReleasedOnce() {
+        DeliveryPlanner planner = new DeliveryPlanner(10, TOLERANCE_MILLIS);
+        ScheduledReminder reminder = flexible(BURST_MINUTE);
+        long now = BURST_MINUTE - 30_000;
+
+        assertTrue(planner.plan(List.of(reminder), now).isEmpty());
+        // Следующий опрос снова приносит то же активное напоминание
+        assertTrue(planner.plan(List.of(reminder), now + 1000).isEmpty());
+        assertEquals(1, planner.getStagedCount());
+
+        List<ScheduledReminder> released = new ArrayList<>(planner.plan(List.of(reminder), BURST_MINUTE));
+        released.addAll(planner.plan(List.of(), BURST_MINUTE + 1000));
+        assertEquals(List.of(reminder), released);
+        assertEquals(0, planner.getStagedCount());
+        assertFalse(planner.isStaged(reminder.getId()));
+    }
+
+    @Test
+    void removedReminderCanBeStagedAgain() {
+        DeliveryPlanner planner = new DeliveryPlanner(10, TOLERANCE_MILLIS);
+        ScheduledReminder reminder = flexible(BURST_MINUTE);
+        long now = BURST_MINUTE - 30_000;
+
+        planner.plan(List.of(reminder), now);
+        assertTrue(planner.remove(reminder.getId()));
+        assertFalse(planner.isStaged(reminder.getId()));
+        planner.plan(List.of(reminder), now);
+        assertEquals(1, planner.getStagedCount());
+    }
+
+    @Test
+    void releasesEarlyBeforeBurstWithinTickBudget() {
+        DeliveryPlanner planner = new DeliveryPlanner(10, TOLERANCE_MILLIS);
+        // 300 напоминаний при 10 в секунду - начинать за 30 секунд
+        planner.updateForecast(Map.of(BURST_MINUTE, 300L));
+        List<ScheduledReminder> due = flexibleBatch(15, BURST_MINUTE);
+
+        List<ScheduledReminder> released = planner.plan(due, BURST_MINUTE - 20_000);
+
+        assertEquals(due.subList(0, 10), released);
+        assertEquals(10, planner.getReleasedEarlyCount());
+        assertEquals(5, planner.getStagedCount());
+    }
+
+    @Test
+    void holdsFlexibleRemindersUntilDeadlineWithoutBurst() {
+        DeliveryPlanner planner = new DeliveryPlanner(10, TOLERANCE_MILLIS);
+        List<ScheduledReminder> due = flexibleBatch(15, BURST_MINUTE);
+
+        assertTrue(planner.plan(due, BURST_MINUTE - 20_000).isEmpty());
+        assertEquals(15, planner.getStagedCount());
+        // В срок выходят все, независимо от бюджета тика
+        assertEquals(due, planner.plan(List.of(), BURST_MINUTE));
+        assertEquals(0, planner.getReleasedEarlyCount());
+    }
+
+    @Test
+    void strictRemindersGoFirstAndAreNeverStaged() {
+        DeliveryPlanner planner = new DeliveryPlanner(10, TOLERANCE_MILLIS);
+        planner.updateForecast(Map.of(BURST_MINUTE, 300L));
+        ScheduledReminder flexible = flexible(BURST_MINUTE);
+        ScheduledReminder strict = reminder(BURST_MINUTE - 20_000, false);
+
+        List<ScheduledReminder> released = planner.plan(List.of(flexible, strict), BURST_MINUTE - 20_000);
+
+        assertEquals(List.of(strict, flexible), released);
+        assertEquals(0, planner.getStagedCount());
+    }
+
+    private static List<ScheduledReminder> flexibleBatch(int count, long remindAtMillis) {
+        List<ScheduledReminder> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            batch.add(flexible(remindAtMillis));
+        }
+        // Тот же порядок, в котором их выпускает планировщик: по сроку, затем по id
+        batch.sort((a, b) -> a.getId().compareTo(b.getId()));
+        return batch;
+    }
+
+    private static ScheduledReminder flexible(long remindAtMillis) {
+        return reminder(remindAtMillis, true);
+    }
+
+    private static ScheduledReminder reminder(long remindAtMillis, boolean flexibleTime) {
+        return new ScheduledReminder(new ObjectId(), "1", "title", "text", Instant.ofEpochMilli(remindAtMillis),
+                null, null, flexibleTime);
+    }
+}